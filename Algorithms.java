@@ -89,6 +89,144 @@ Sorting
     8: [carets, cartes, caster, caters, crates, reacts,
            recast, traces]
 
+    Sorting every qualifying group just to print them in order is fine for a dictionary's worth of groups, but it does more work than the job requires when you only want the biggest few. If there are n groups and you want the largest k, there's no need to put all n in order. A bounded heap holding the best k seen so far does the job in time proportional to n log k: each new element is compared with the worst of the current winners, the root of the heap, and replaces it only if it is better.
+
+    The following selection method returns exactly what sorting the collection with Collections.sort and taking the first n elements would return, including the order of elements that compare equal. Because sort is stable, equal elements keep their original order, and the heap reproduces that by remembering each element's position in the collection and treating the later of two equal elements as the worse one.
+
+    A second form of topN handles the case in the anagram example, where the sort key is a small nonnegative int. Instead of a Comparator, it takes a ToIntFunction that extracts the key, and it puts the elements in order of decreasing key with a counting sort: one pass counts the elements with each key, and a second pass puts each element directly in its final position. That takes time proportional to n plus the largest key, with no comparisons at all. If the keys turn out to be too large for a counting array to be sensible, it falls back to the heap.
+
+    public static <T> List<T> topN(Collection<? extends T> c, int n,
+                                   Comparator<? super T> cmp) {
+        if (n < 0)
+            throw new IllegalArgumentException("n: " + n);
+        Object[] heap = new Object[Math.min(n, c.size())];
+        int[] seq = new int[heap.length];
+        int size = 0;
+        int i = 0;
+        for (T e : c) {
+            if (size < heap.length) {
+                heap[size] = e;
+                seq[size] = i;
+                siftUp(heap, seq, size++, cmp);
+            } else if (size > 0 && cmp.compare(e, elementAt(heap, 0)) < 0) {
+                heap[0] = e;
+                seq[0] = i;
+                siftDown(heap, seq, 0, size, cmp);
+            }
+            i++;
+        }
+
+        // The root is always the worst of the winners, so removing the
+        // roots one by one fills the result from the back.
+        Object[] result = new Object[size];
+        while (size > 0) {
+            result[--size] = heap[0];
+            heap[0] = heap[size];
+            seq[0] = seq[size];
+            siftDown(heap, seq, 0, size, cmp);
+        }
+        return asList(result);
+    }
+
+    public static <T> List<T> topN(Collection<? extends T> c, int n,
+                                   ToIntFunction<? super T> key) {
+        if (n < 0)
+            throw new IllegalArgumentException("n: " + n);
+        int max = 0;
+        for (T e : c) {
+            int k = key.applyAsInt(e);
+            if (k < 0)
+                throw new IllegalArgumentException("negative key: " + k);
+            max = Math.max(max, k);
+        }
+        if (max > Math.max(COUNTING_SORT_LIMIT, c.size()))
+            return topN(c, n, Comparator.comparingInt(key).reversed());
+
+        // Count the elements with each key, largest key first, then turn
+        // the counts into the position where each key's elements start.
+        int[] next = new int[max + 1];
+        for (T e : c)
+            next[max - key.applyAsInt(e)]++;
+        for (int b = 0, pos = 0; b <= max; b++) {
+            int count = next[b];
+            next[b] = pos;
+            pos += count;
+        }
+
+        Object[] result = new Object[Math.min(n, c.size())];
+        for (T e : c) {
+            int pos = next[max - key.applyAsInt(e)]++;
+            if (pos < result.length)
+                result[pos] = e;
+        }
+        return asList(result);
+    }
+
+    private static final int COUNTING_SORT_LIMIT = 1024;
+
+    // Element i is worse than element j if it sorts after it, or if they
+    // sort equal and i came later. The heap keeps the worst at the root.
+    private static <T> boolean worse(Object[] heap, int[] seq, int i, int j,
+                                     Comparator<? super T> cmp) {
+        T a = elementAt(heap, i);
+        T b = elementAt(heap, j);
+        int c = cmp.compare(a, b);
+        return c > 0 || (c == 0 && seq[i] > seq[j]);
+    }
+
+    private static <T> void siftUp(Object[] heap, int[] seq, int i,
+                                   Comparator<? super T> cmp) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!worse(heap, seq, i, parent, cmp))
+                break;
+            swap(heap, seq, i, parent);
+            i = parent;
+        }
+    }
+
+    private static <T> void siftDown(Object[] heap, int[] seq, int i, int size,
+                                     Comparator<? super T> cmp) {
+        for (int child; (child = 2 * i + 1) < size; i = child) {
+            if (child + 1 < size && worse(heap, seq, child + 1, child, cmp))
+                child++;
+            if (!worse(heap, seq, child, i, cmp))
+                break;
+            swap(heap, seq, i, child);
+        }
+    }
+
+    private static void swap(Object[] heap, int[] seq, int i, int j) {
+        Object e = heap[i];
+        heap[i] = heap[j];
+        heap[j] = e;
+        int s = seq[i];
+        seq[i] = seq[j];
+        seq[j] = s;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T elementAt(Object[] a, int i) {
+        return (T) a[i];
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> List<T> asList(Object[] a) {
+        return (List<T>) Arrays.asList(a);
+    }
+
+    With topN, the printing code from the Anagrams example no longer needs the winners list or the anonymous Comparator.
+
+    // Print the ten largest anagram groups above size threshold.
+    List<List<String>> groups = new ArrayList<List<String>>();
+    for (List<String> l : m.values())
+        if (l.size() >= minGroupSize)
+            groups.add(l);
+    for (List<String> l : topN(groups, 10, List::size))
+        System.out.println(l.size() + ": " + l);
+
+    The key extractor List::size is also an improvement on the Comparator in its own right. The expression o2.size() - o1.size() is correct only because sizes are never negative; with arbitrary ints, the subtraction can overflow and give the wrong sign. And since the method reference captures nothing, the JVM creates it once and reuses it, so passing it costs nothing. If you do need a Comparator on a key, Comparator.comparingInt(List::size).reversed() builds one without the subtraction.
+
 Shuffling
 
     The shuffle algorithm does the opposite of what sort does, destroying any trace of order that may have been present in a List. That is, this algorithm reorders the List based on input from a source of randomness such that all possible permutations occur with equal likelihood, assuming a fair source of randomness. This algorithm is useful in implementing games of chance. For example, it could be used to shuffle a List of Card objects representing a deck. Also, it's useful for generating test cases.
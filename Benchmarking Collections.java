@@ -0,0 +1,1764 @@
+The polymorphic algorithms in the preceding sections (swap, shuffle, replace and dealHand in The List Interface, removeDups, FindDups and FindDups2 in The Set Interface, Freq, newAttributeMap, validate and Anagrams in The Map Interface, and heapSort in The Queue Interface) are easy to read, but nothing in the snippets tells you how fast they are. This section shows how to measure them with JMH, the Java Microbenchmark Harness, so that a change to any of them can be compared against the version you started with.
+
+Why Not Just Time It?
+
+    It's tempting to wrap a call in System.nanoTime and print the difference. Unfortunately, the numbers you get that way are mostly noise: the first few thousand calls run in the interpreter, the JIT compiler may discover that your result is never used and remove the call altogether, and a garbage collection in the middle of the loop will be charged to whichever method happened to be running. JMH takes care of warming up the code, running it in freshly forked JVMs, consuming results so that they can't be optimized away, and reporting the error bars along with the averages.
+
+Setting Up the Harness
+
+    The benchmarks live in a Maven project of their own, generated from the JMH archetype.
+
+    % mvn archetype:generate -DinteractiveMode=false \
+          -DarchetypeGroupId=org.openjdk.jmh \
+          -DarchetypeArtifactId=jmh-java-benchmark-archetype \
+          -DgroupId=snippets -DartifactId=benchmarks -Dversion=1.0
+
+    The archetype produces a pom.xml that depends on jmh-core, runs the jmh-generator-annprocess annotation processor, and uses the shade plugin to build a self-contained benchmarks.jar. The only dependencies it needs are the following.
+
+    <dependency>
+        <groupId>org.openjdk.jmh</groupId>
+        <artifactId>jmh-core</artifactId>
+        <version>1.37</version>
+    </dependency>
+    <dependency>
+        <groupId>org.openjdk.jmh</groupId>
+        <artifactId>jmh-generator-annprocess</artifactId>
+        <version>1.37</version>
+        <scope>provided</scope>
+    </dependency>
+
+    A benchmark can only measure code it can call, and the algorithms in this tutorial are written as fragments. The benchmark project therefore keeps a copy of every fragment in a single class, Snippets. The bodies are copied verbatim; the only changes are that the main programs (FindDups, FindDups2, Freq and Anagrams) become methods that take their words as a Collection and return their result, and that validate no longer prints its error messages, because console output would swamp everything else being measured.
+
+    import java.util.*;
+
+    public final class Snippets {
+        private Snippets() { }
+
+        // The List Interface
+        public static <E> void swap(List<E> a, int i, int j) {
+            E tmp = a.get(i);
+            a.set(i, a.get(j));
+            a.set(j, tmp);
+        }
+
+        public static void shuffle(List<?> list, Random rnd) {
+            for (int i = list.size(); i > 1; i--)
+                swap(list, i - 1, rnd.nextInt(i));
+        }
+
+        public static <E> void replace(List<E> list, E val, E newVal) {
+            for (ListIterator<E> it = list.listIterator(); it.hasNext(); )
+                if (val == null ? it.next() == null : val.equals(it.next()))
+                    it.set(newVal);
+        }
+
+        public static <E> List<E> dealHand(List<E> deck, int n) {
+            int deckSize = deck.size();
+            List<E> handView = deck.subList(deckSize - n, deckSize);
+            List<E> hand = new ArrayList<E>(handView);
+            handView.clear();
+            return hand;
+        }
+
+        // The Set Interface
+        public static <E> Set<E> removeDups(Collection<E> c) {
+            return new LinkedHashSet<E>(c);
+        }
+
+        public static int findDups(Set<String> s, Collection<String> words) {
+            int dups = 0;
+            for (String a : words)
+                if (!s.add(a))
+                    dups++;
+            return dups;
+        }
+
+        public static Set<String> findDups2(Set<String> uniques, Set<String> dups,
+                                            Collection<String> words) {
+            for (String a : words)
+                if (!uniques.add(a))
+                    dups.add(a);
+            uniques.removeAll(dups);
+            return dups;
+        }
+
+        // The Map Interface
+        public static Map<String, Integer> freq(Collection<String> words) {
+            Map<String, Integer> m = new HashMap<String, Integer>();
+            for (String a : words) {
+                Integer freq = m.get(a);
+                m.put(a, (freq == null) ? 1 : freq + 1);
+            }
+            return m;
+        }
+
+        public static <K, V> Map<K, V> newAttributeMap(
+                Map<K, V> defaults, Map<K, V> overrides) {
+            Map<K, V> result = new HashMap<K, V>(defaults);
+            result.putAll(overrides);
+            return result;
+        }
+
+        public static <K, V> boolean validate(Map<K, V> attrMap,
+                Set<K> requiredAttrs, Set<K> permittedAttrs) {
+            boolean valid = true;
+            Set<K> attrs = attrMap.keySet();
+            if (!attrs.containsAll(requiredAttrs)) {
+                Set<K> missing = new HashSet<K>(requiredAttrs);
+                missing.removeAll(attrs);
+                valid = false;
+            }
+            if (!permittedAttrs.containsAll(attrs)) {
+                Set<K> illegal = new HashSet<K>(attrs);
+                illegal.removeAll(permittedAttrs);
+                valid = false;
+            }
+            return valid;
+        }
+
+        public static Map<String, List<String>> anagrams(Collection<String> words) {
+            Map<String, List<String>> m = new HashMap<String, List<String>>();
+            for (String word : words) {
+                String alpha = alphabetize(word);
+                List<String> l = m.get(alpha);
+                if (l == null)
+                    m.put(alpha, l = new ArrayList<String>());
+                l.add(word);
+            }
+            return m;
+        }
+
+        private static String alphabetize(String s) {
+            char[] a = s.toCharArray();
+            Arrays.sort(a);
+            return new String(a);
+        }
+
+        // The Queue Interface
+        public static <E> List<E> heapSort(Collection<E> c) {
+            Queue<E> queue = new PriorityQueue<E>(c);
+            List<E> result = new ArrayList<E>();
+            while (!queue.isEmpty())
+                result.add(queue.remove());
+            return result;
+        }
+
+        // Test data shared by all benchmarks: short lowercase words over a
+        // small alphabet, so that duplicates and anagram groups really occur.
+        public static List<String> words(int n, long seed) {
+            Random rnd = new Random(seed);
+            List<String> words = new ArrayList<String>(n);
+            char[] buf = new char[8];
+            for (int i = 0; i < n; i++) {
+                int len = 3 + rnd.nextInt(buf.length - 2);
+                for (int j = 0; j < len; j++)
+                    buf[j] = (char) ('a' + rnd.nextInt(12));
+                words.add(new String(buf, 0, len));
+            }
+            return words;
+        }
+    }
+
+    The words method deserves a word of explanation. Random strings of random length would almost never repeat, so FindDups would never find a duplicate and Anagrams would never find a group. Drawing short words from a twelve-letter alphabet gives a realistic mix of repeated words, anagram groups and singletons, and the fixed seed means that every run sees exactly the same input.
+
+Writing the Benchmarks
+
+    Each benchmark class is a @State object whose fields hold the input. The @Param annotations tell JMH to run every benchmark method once for each combination of values, so a single class covers every input size and implementation type. The sizes run from one thousand to ten million elements.
+
+    The first class measures the List algorithms against ArrayList and LinkedList. Because shuffle, replace and dealHand all modify the list they are given, each invocation works on a fresh copy made in a Level.Invocation setup method. JMH doesn't charge the time spent in a setup method to the benchmark.
+
+    import java.util.*;
+    import java.util.concurrent.TimeUnit;
+    import org.openjdk.jmh.annotations.*;
+
+    @BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @State(Scope.Thread)
+    @Fork(value = 2, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+    @Warmup(iterations = 5, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public class ListAlgorithmsBenchmark {
+
+        @Param({"1000", "100000", "1000000", "10000000"})
+        int size;
+
+        @Param({"ArrayList", "LinkedList"})
+        String impl;
+
+        List<String> master;
+        List<String> list;
+        Random rnd;
+
+        @Setup(Level.Trial)
+        public void createMaster() {
+            master = Snippets.words(size, 42);
+        }
+
+        // Every invocation gets a fresh copy, because shuffle, replace and
+        // dealHand all modify the list they are given.
+        @Setup(Level.Invocation)
+        public void copy() {
+            list = impl.equals("ArrayList") ? new ArrayList<String>(master)
+                                            : new LinkedList<String>(master);
+            rnd = new Random(42);
+        }
+
+        @Benchmark
+        public List<String> swap() {
+            Snippets.swap(list, 0, size - 1);
+            return list;
+        }
+
+        @Benchmark
+        public List<String> shuffle() {
+            Snippets.shuffle(list, rnd);
+            return list;
+        }
+
+        @Benchmark
+        public List<String> replace() {
+            Snippets.replace(list, "abc", "cba");
+            return list;
+        }
+
+        @Benchmark
+        public List<String> dealHand() {
+            return Snippets.dealHand(list, size / 10);
+        }
+    }
+
+    The Set algorithms take the same words; here the implementation type that matters is the Set that FindDups and FindDups2 add the words to.
+
+    import java.util.*;
+    import java.util.concurrent.TimeUnit;
+    import org.openjdk.jmh.annotations.*;
+
+    @BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @State(Scope.Thread)
+    @Fork(value = 2, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+    @Warmup(iterations = 5, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public class SetAlgorithmsBenchmark {
+
+        @Param({"1000", "100000", "1000000", "10000000"})
+        int size;
+
+        @Param({"HashSet", "TreeSet"})
+        String impl;
+
+        List<String> words;
+
+        @Setup(Level.Trial)
+        public void createWords() {
+            words = Snippets.words(size, 42);
+        }
+
+        Set<String> newSet() {
+            return impl.equals("HashSet") ? new HashSet<String>()
+                                          : new TreeSet<String>();
+        }
+
+        @Benchmark
+        public Set<String> removeDups() {
+            return Snippets.removeDups(words);
+        }
+
+        @Benchmark
+        public int findDups() {
+            return Snippets.findDups(newSet(), words);
+        }
+
+        @Benchmark
+        public Set<String> findDups2() {
+            return Snippets.findDups2(newSet(), newSet(), words);
+        }
+    }
+
+    The Map algorithms read their words from either an ArrayList or a LinkedList. The attribute maps for newAttributeMap and validate are built from the same words: the even-numbered words are the defaults (and the required attributes), the odd-numbered words are the overrides, and every word is permitted.
+
+    import java.util.*;
+    import java.util.concurrent.TimeUnit;
+    import org.openjdk.jmh.annotations.*;
+
+    @BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @State(Scope.Thread)
+    @Fork(value = 2, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+    @Warmup(iterations = 5, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public class MapAlgorithmsBenchmark {
+
+        @Param({"1000", "100000", "1000000", "10000000"})
+        int size;
+
+        @Param({"ArrayList", "LinkedList"})
+        String impl;
+
+        Collection<String> words;
+        Map<String, String> defaults;
+        Map<String, String> overrides;
+        Set<String> required;
+        Set<String> permitted;
+
+        @Setup(Level.Trial)
+        public void createInputs() {
+            List<String> w = Snippets.words(size, 42);
+            words = impl.equals("ArrayList") ? w : new LinkedList<String>(w);
+
+            // Attribute maps: every word is permitted, half of them required.
+            defaults = new HashMap<String, String>();
+            overrides = new HashMap<String, String>();
+            required = new HashSet<String>();
+            permitted = new HashSet<String>(w);
+            for (int i = 0; i < w.size(); i++) {
+                String a = w.get(i);
+                if (i % 2 == 0) {
+                    defaults.put(a, "default");
+                    required.add(a);
+                } else {
+                    overrides.put(a, "override");
+                }
+            }
+        }
+
+        @Benchmark
+        public Map<String, Integer> freq() {
+            return Snippets.freq(words);
+        }
+
+        @Benchmark
+        public Map<String, String> newAttributeMap() {
+            return Snippets.newAttributeMap(defaults, overrides);
+        }
+
+        @Benchmark
+        public boolean validate() {
+            return Snippets.validate(defaults, required, permitted);
+        }
+
+        @Benchmark
+        public Map<String, List<String>> anagrams() {
+            return Snippets.anagrams(words);
+        }
+    }
+
+    Finally, heapSort accepts any Collection, so it is run against all four implementation types.
+
+    import java.util.*;
+    import java.util.concurrent.TimeUnit;
+    import org.openjdk.jmh.annotations.*;
+
+    @BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @State(Scope.Thread)
+    @Fork(value = 2, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+    @Warmup(iterations = 5, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public class HeapSortBenchmark {
+
+        @Param({"1000", "100000", "1000000", "10000000"})
+        int size;
+
+        @Param({"ArrayList", "LinkedList", "HashSet", "TreeSet"})
+        String impl;
+
+        Collection<String> input;
+
+        @Setup(Level.Trial)
+        public void createInput() {
+            List<String> w = Snippets.words(size, 42);
+            if (impl.equals("ArrayList"))
+                input = w;
+            else if (impl.equals("LinkedList"))
+                input = new LinkedList<String>(w);
+            else if (impl.equals("HashSet"))
+                input = new HashSet<String>(w);
+            else
+                input = new TreeSet<String>(w);
+        }
+
+        @Benchmark
+        public List<String> heapSort() {
+            return Snippets.heapSort(input);
+        }
+    }
+
+Running the Benchmarks
+
+    Build the project and run the resulting jar. With no arguments, JMH runs every benchmark it finds.
+
+    % mvn clean verify
+    % java -jar target/benchmarks.jar
+
+    Every class is annotated with two benchmark modes. Mode.Throughput reports operations per millisecond. Mode.SampleTime records the time taken by individual calls and reports the latency distribution: p0.50, p0.90, p0.99, p0.999 and so on, up to the worst call. The percentiles are often more revealing than the average, because a single resize of a HashMap or a single garbage collection shows up in the tail long before it moves the mean.
+
+    To see how much garbage each algorithm produces, add the GC profiler.
+
+    % java -jar target/benchmarks.jar -prof gc
+
+    The profiler adds gc.alloc.rate (megabytes allocated per second) and gc.alloc.rate.norm (bytes allocated per operation) to every result. The normalized figure is the one to watch: it doesn't depend on how fast the machine is, so a change that makes it grow is a regression even when the throughput looks unchanged.
+
+    A full run covers a lot of combinations, and some of them take a very long time. The shuffle in The List Interface calls get and set, each of which walks a LinkedList from one end, so shuffling a ten-million-element LinkedList is quadratic and will not finish in any reasonable amount of time. Use a regular expression and -p to narrow the run to what you're working on.
+
+    % java -jar target/benchmarks.jar ListAlgorithmsBenchmark.shuffle \
+          -p impl=LinkedList -p size=1000,100000 -prof gc
+
+    To catch regressions, save the results in machine-readable form and compare the files from before and after a change.
+
+    % java -jar target/benchmarks.jar -prof gc -rf json -rff baseline.json
+
+    Two warnings about reading the numbers. First, the Level.Invocation setup in ListAlgorithmsBenchmark copies the list before every call; the copy isn't timed, but for the smallest lists the timestamps taken around every call are no longer negligible, so compare small sizes only with each other. Second, the results are only as good as the input. If your production data looks nothing like the output of Snippets.words, change words so that it does.
+
+Comparing Shuffles
+
+    The Shuffling Large Lists section of The List Interface offers two replacements for the original shuffle: one that copies lists without fast positional access into an array, and one, driven by a seed, that shuffles very large arrays in parallel. To measure them, copy the new methods into a class called Shuffles in the benchmark project, next to Snippets, and add the following benchmark.
+
+    import java.util.*;
+    import java.util.concurrent.TimeUnit;
+    import org.openjdk.jmh.annotations.*;
+
+    @BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @State(Scope.Thread)
+    @Fork(value = 2, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+    @Warmup(iterations = 5, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public class ShuffleBenchmark {
+
+        @Param({"1000", "100000", "1000000", "10000000"})
+        int size;
+
+        @Param({"ArrayList", "LinkedList"})
+        String impl;
+
+        List<String> list;
+        Random rnd;
+
+        // Shuffling leaves the list just as good an input as it was before,
+        // so unlike ListAlgorithmsBenchmark there is no need to copy it.
+        @Setup(Level.Trial)
+        public void createList() {
+            List<String> words = Snippets.words(size, 42);
+            list = impl.equals("ArrayList") ? words : new LinkedList<String>(words);
+            rnd = new Random(42);
+        }
+
+        @Benchmark
+        public List<String> original() {
+            Snippets.shuffle(list, rnd);
+            return list;
+        }
+
+        @Benchmark
+        public List<String> randomAccessAware() {
+            Shuffles.shuffle(list, rnd);
+            return list;
+        }
+
+        @Benchmark
+        public List<String> seeded() {
+            Shuffles.shuffle(list, 42L);
+            return list;
+        }
+    }
+
+    The interesting comparisons are down the columns. For an ArrayList, original and randomAccessAware run the same loop and should be indistinguishable; seeded pays for the copy to and from an array, and gets it back with interest at ten million elements, where the parallel path takes over. For a LinkedList, original is only practical at the smallest sizes. Run it separately, with a narrower size parameter, so that it doesn't hold up the rest of the suite.
+
+    % java -jar target/benchmarks.jar ShuffleBenchmark -e original
+    % java -jar target/benchmarks.jar ShuffleBenchmark.original -p size=1000,100000
+
+    The parallel path uses the common fork/join pool, so its throughput depends on the number of cores available. Record the machine's core count along with the results.
+
+Counting Words
+
+    The Counting Without Boxing section of The Map Interface replaces the HashMap in Freq with WordCounts, a table that keeps its counts as ints. The saving only shows up at scale, so this benchmark counts a hundred million tokens. Copy WordCounts and IntCursor into the benchmark project and add the following class.
+
+    import java.util.*;
+    import java.util.concurrent.TimeUnit;
+    import org.openjdk.jmh.annotations.*;
+
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @State(Scope.Benchmark)
+    @Fork(value = 2, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 5)
+    public class FreqBenchmark {
+
+        @Param({"100000000"})
+        int tokens;
+
+        @Param({"1000", "100000", "10000000"})
+        int vocabulary;
+
+        // The tokens share a small number of String objects, the way the
+        // words of a real text do once they have been interned or parsed
+        // from a symbol table. An array keeps the input to 4 bytes per token.
+        String[] input;
+
+        @Setup(Level.Trial)
+        public void createInput() {
+            List<String> words = Snippets.words(vocabulary, 42);
+            Random rnd = new Random(42);
+            input = new String[tokens];
+            for (int i = 0; i < tokens; i++)
+                input[i] = words.get(rnd.nextInt(vocabulary));
+        }
+
+        @Benchmark
+        public Map<String, Integer> hashMap() {
+            return Snippets.freq(Arrays.asList(input));
+        }
+
+        @Benchmark
+        public WordCounts wordCounts() {
+            WordCounts m = new WordCounts();
+            for (String a : input)
+                m.increment(a);
+            return m;
+        }
+    }
+
+    A single count of a hundred million tokens takes seconds, so this benchmark uses Mode.SingleShotTime, which times each call on its own, instead of repeating the call for a fixed period. The vocabulary parameter matters as much as the number of tokens. With a thousand distinct words, both tables fit in the processor's cache and the difference is almost entirely the second lookup and the boxing. With ten million distinct words, every lookup is a cache miss and the difference narrows to the number of misses per token: two for HashMap, which must follow a pointer from its table to a node and from the node to the key, against one or two for WordCounts, whose keys are in the table itself.
+
+    Run it with the GC profiler. The hashMap benchmark allocates a new Integer for almost every token once the counts pass 127, so gc.alloc.rate.norm grows with the number of tokens; the wordCounts benchmark allocates only its arrays, so it grows with the vocabulary.
+
+    % java -jar target/benchmarks.jar FreqBenchmark -prof gc
+
+Counting From Many Threads
+
+    The Counting From Many Threads section of Map Implementations offers two ways for threads to share a frequency table: incrementing a shared LongAdder per word, and counting privately in a Writer that is merged into the table when it closes. This benchmark compares both with the synchronized HashMap that they replace. Copy WordCounts, IntCursor and ConcurrentWordCounts into the benchmark project.
+
+    import java.util.*;
+    import java.util.concurrent.TimeUnit;
+    import org.openjdk.jmh.annotations.*;
+
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Fork(value = 2, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+    @Warmup(iterations = 5, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public class ConcurrentFreqBenchmark {
+
+        @State(Scope.Benchmark)
+        public static class Shared {
+            @Param({"1000", "100000"})
+            int vocabulary;
+
+            String[] words;
+            Map<String, Integer> synchronizedMap;
+            ConcurrentWordCounts counts;
+
+            @Setup(Level.Iteration)
+            public void setUp() {
+                words = Snippets.words(vocabulary, 42).toArray(new String[0]);
+                synchronizedMap = Collections.synchronizedMap(
+                    new HashMap<String, Integer>());
+                counts = new ConcurrentWordCounts();
+            }
+        }
+
+        @State(Scope.Thread)
+        public static class PerThread {
+            int next;
+            ConcurrentWordCounts.Writer writer;
+
+            @Setup(Level.Iteration)
+            public void setUp(Shared shared) {
+                next = new Random().nextInt(shared.words.length);
+                writer = shared.counts.writer();
+            }
+
+            @TearDown(Level.Iteration)
+            public void tearDown() {
+                writer.close();
+            }
+
+            String nextWord(Shared shared) {
+                if (++next == shared.words.length)
+                    next = 0;
+                return shared.words[next];
+            }
+        }
+
+        // The Freq idiom, made atomic by locking the map for the whole
+        // get-then-put, as it must be for the count to be exact.
+        @Benchmark
+        public void synchronizedMap(Shared shared, PerThread t) {
+            String a = t.nextWord(shared);
+            synchronized (shared.synchronizedMap) {
+                Integer freq = shared.synchronizedMap.get(a);
+                shared.synchronizedMap.put(a, (freq == null) ? 1 : freq + 1);
+            }
+        }
+
+        @Benchmark
+        public void sharedAdders(Shared shared, PerThread t) {
+            shared.counts.increment(t.nextWord(shared));
+        }
+
+        @Benchmark
+        public void writer(Shared shared, PerThread t) {
+            t.writer.increment(t.nextWord(shared));
+        }
+    }
+
+    This class uses two @State classes. The Shared state is created once per iteration and seen by every thread; the PerThread state gives every thread its own position in the word list and its own Writer, which is closed, and so merged, at the end of each iteration. Starting the threads at random positions keeps them from counting the same word at the same moment, which would make contention look worse than it is.
+
+    The benchmark is interesting only as the number of threads varies, which is set with -t.
+
+    % java -jar target/benchmarks.jar ConcurrentFreqBenchmark -t 1
+    % java -jar target/benchmarks.jar ConcurrentFreqBenchmark -t 4
+    % java -jar target/benchmarks.jar ConcurrentFreqBenchmark -t 16
+
+    The scores are total operations per microsecond across all threads. Expect synchronizedMap to fall as threads are added, sharedAdders to rise, and writer to rise nearly in proportion to the number of threads, since its threads share nothing until they merge. The smaller vocabulary is the harder test for sharedAdders, because with a thousand words the threads collide on the same adders far more often.
+
+Comparing Heaps
+
+    The Queue Interface section adds IntHeap, LongHeap and DoubleHeap, primitive heaps with a configurable arity, and an array-based heapSort for objects. This benchmark compares them with the original heapSort, which fills and empties a PriorityQueue, and with Arrays.sort, which is the right tool when all you want is sorted output. Copy the three heaps into the benchmark project, and the new heapSort into a class called HeapSort.
+
+    import java.util.*;
+    import java.util.concurrent.TimeUnit;
+    import org.openjdk.jmh.annotations.*;
+    import org.openjdk.jmh.infra.Blackhole;
+
+    @BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @State(Scope.Thread)
+    @Fork(value = 2, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+    @Warmup(iterations = 5, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public class HeapBenchmark {
+
+        @Param({"1000", "100000", "1000000", "10000000"})
+        int size;
+
+        @Param({"2", "4", "8"})
+        int arity;
+
+        int[] values;
+        long[] longValues;
+        double[] doubleValues;
+        double[] specialValues;
+        List<Integer> boxed;
+
+        @Setup(Level.Trial)
+        public void createInput() {
+            Random rnd = new Random(42);
+            values = new int[size];
+            boxed = new ArrayList<Integer>(size);
+            for (int i = 0; i < size; i++) {
+                values[i] = rnd.nextInt();
+                boxed.add(values[i]);
+            }
+            longValues = new long[size];
+            doubleValues = new double[size];
+            for (int i = 0; i < size; i++) {
+                longValues[i] = rnd.nextLong();
+                doubleValues[i] = rnd.nextGaussian();
+            }
+            // One value in ten is NaN, -0.0 or 0.0, the values that only
+            // Double.compare puts in order.
+            specialValues = doubleValues.clone();
+            double[] special = { Double.NaN, -0.0, 0.0 };
+            for (int i = 0; i < size; i += 10)
+                specialValues[i] = special[i / 10 % 3];
+        }
+
+        // Fill a PriorityQueue and empty it: the original heapSort.
+        @Benchmark
+        public List<Integer> priorityQueue() {
+            return Snippets.heapSort(boxed);
+        }
+
+        @Benchmark
+        public List<Integer> arrayHeapSort() {
+            return HeapSort.heapSort(boxed);
+        }
+
+        @Benchmark
+        public void intHeapAdd(Blackhole bh) {
+            IntHeap heap = new IntHeap(arity);
+            for (int v : values)
+                heap.add(v);
+            while (!heap.isEmpty())
+                bh.consume(heap.poll());
+        }
+
+        @Benchmark
+        public void intHeapify(Blackhole bh) {
+            IntHeap heap = new IntHeap(arity, values);
+            while (!heap.isEmpty())
+                bh.consume(heap.poll());
+        }
+
+        @Benchmark
+        public void longHeapAdd(Blackhole bh) {
+            LongHeap heap = new LongHeap(arity);
+            for (long v : longValues)
+                heap.add(v);
+            while (!heap.isEmpty())
+                bh.consume(heap.poll());
+        }
+
+        @Benchmark
+        public void longHeapify(Blackhole bh) {
+            LongHeap heap = new LongHeap(arity, longValues);
+            while (!heap.isEmpty())
+                bh.consume(heap.poll());
+        }
+
+        @Benchmark
+        public void doubleHeapAdd(Blackhole bh) {
+            DoubleHeap heap = new DoubleHeap(arity);
+            for (double v : doubleValues)
+                heap.add(v);
+            while (!heap.isEmpty())
+                bh.consume(heap.poll());
+        }
+
+        @Benchmark
+        public void doubleHeapify(Blackhole bh) {
+            DoubleHeap heap = new DoubleHeap(arity, doubleValues);
+            while (!heap.isEmpty())
+                bh.consume(heap.poll());
+        }
+
+        @Benchmark
+        public void doubleHeapifySpecial(Blackhole bh) {
+            DoubleHeap heap = new DoubleHeap(arity, specialValues);
+            while (!heap.isEmpty())
+                bh.consume(heap.poll());
+        }
+
+        @Benchmark
+        public int[] arraysSort() {
+            int[] a = values.clone();
+            Arrays.sort(a);
+            return a;
+        }
+    }
+
+    Each heap benchmark empties the heap through the Blackhole, so it measures a complete sort; the Add and heapify versions differ only in how the heap is built. The long versions show what the wider elements cost: twice the bytes for every level of the heap, so the heap drops out of cache at half the size. The double versions add the cost of Double.compare, which does more work than a single comparison of primitives, and doubleHeapifySpecial sorts the same values with one in ten replaced by NaN, -0.0 or 0.0, the values that take its slower paths. The arity parameter only affects the heap benchmarks, so the other three results are repeated for each arity. Exclude them from all but one arity to save time.
+
+    % java -jar target/benchmarks.jar 'HeapBenchmark.(int|long|double)Heap' -prof gc
+    % java -jar target/benchmarks.jar HeapBenchmark -e 'Heap(Add|ify)' -p arity=2 -prof gc
+
+    Expect the widest spread at ten million elements, where the heap no longer fits in cache. The gc.alloc.rate.norm column tells the boxing story: priorityQueue and arrayHeapSort allocate nothing per element beyond their arrays here, because the Integer objects were created in setup, but in a program that boxes its ints for the purpose of sorting them, each of those objects would count too.
+
+Comparing Timers
+
+    The Queue Interface section replaces the Countdown program's sleep loop with TimingWheel, a hierarchical timing wheel. A timer's most common fate is to be cancelled, so this benchmark schedules a timer and cancels it straight away, with a million or more other timers already pending. Copy TimingWheel into the benchmark project.
+
+    import java.util.*;
+    import java.util.concurrent.*;
+    import org.openjdk.jmh.annotations.*;
+
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @State(Scope.Thread)
+    @Fork(value = 2, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+    @Warmup(iterations = 5, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public class TimerBenchmark {
+
+        @Param({"1000000", "4000000"})
+        int pendingTimers;
+
+        TimingWheel<Object> wheel;
+        DelayQueue<DelayedTask> delayQueue;
+        ScheduledThreadPoolExecutor executor;
+        Random rnd;
+        static final Runnable NOTHING = () -> { };
+
+        static class DelayedTask implements Delayed {
+            final long deadline;
+
+            DelayedTask(long delay, TimeUnit unit) {
+                deadline = System.nanoTime() + unit.toNanos(delay);
+            }
+
+            public long getDelay(TimeUnit unit) {
+                return unit.convert(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            }
+
+            public int compareTo(Delayed o) {
+                return Long.compare(deadline, ((DelayedTask) o).deadline);
+            }
+        }
+
+        // Every structure starts with the same number of timers, due at
+        // random times in the next hour, so none expire during the run.
+        @Setup(Level.Trial)
+        public void fill() {
+            rnd = new Random(42);
+            wheel = new TimingWheel<Object>(1, TimeUnit.MILLISECONDS);
+            delayQueue = new DelayQueue<DelayedTask>();
+            executor = new ScheduledThreadPoolExecutor(1);
+            executor.setRemoveOnCancelPolicy(true);
+            for (int i = 0; i < pendingTimers; i++) {
+                long delay = 1 + rnd.nextInt(3600000);
+                wheel.schedule(NOTHING, delay, TimeUnit.MILLISECONDS);
+                delayQueue.add(new DelayedTask(delay, TimeUnit.MILLISECONDS));
+                executor.schedule(NOTHING, delay, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void shutdown() {
+            executor.shutdownNow();
+        }
+
+        // The common case for a timeout: it is set, and then cancelled
+        // because the operation it guards finished in time.
+        @Benchmark
+        public boolean timingWheel() {
+            return wheel.schedule(NOTHING, 1 + rnd.nextInt(3600000),
+                                  TimeUnit.MILLISECONDS).cancel();
+        }
+
+        @Benchmark
+        public boolean scheduledThreadPoolExecutor() {
+            return executor.schedule(NOTHING, 1 + rnd.nextInt(3600000),
+                                     TimeUnit.MILLISECONDS).cancel(false);
+        }
+
+        // DelayQueue has no handle to cancel with; remove(Object) searches
+        // the whole queue, which is the point of measuring it.
+        @Benchmark
+        public boolean delayQueue() {
+            DelayedTask task = new DelayedTask(1 + rnd.nextInt(3600000),
+                                               TimeUnit.MILLISECONDS);
+            delayQueue.add(task);
+            return delayQueue.remove(task);
+        }
+    }
+
+    The executor is given setRemoveOnCancelPolicy(true); without it, a cancelled task stays in the executor's queue until its delay expires, and after a few seconds of benchmarking the queue would hold many millions of dead tasks. Filling each structure with four million timers takes a while, and so does each DelayQueue removal, which searches the whole queue. Expect the delayQueue score to be several orders of magnitude below the others. Run it with a single fork if you're short of time.
+
+    % java -jar target/benchmarks.jar TimerBenchmark -prof gc
+    % java -jar target/benchmarks.jar TimerBenchmark.delayQueue -f 1 -p pendingTimers=1000000
+
+Run-Length Encoding
+
+    The Custom Collection Implementations section builds RunLengthList, which stores runs of identical elements as a single element and a count. This benchmark measures the cost of building it, reading it at random positions and iterating over it, against an ArrayList holding the same million tokens. The runLength parameter controls how repetitive the tokens are. Copy RunLengthList into the benchmark project.
+
+    import java.util.*;
+    import java.util.concurrent.TimeUnit;
+    import org.openjdk.jmh.annotations.*;
+    import org.openjdk.jmh.infra.Blackhole;
+
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @State(Scope.Thread)
+    @Fork(value = 2, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+    @Warmup(iterations = 5, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public class RunLengthListBenchmark {
+
+        @Param({"1000000"})
+        int size;
+
+        // The average length of a run of identical tokens.
+        @Param({"1", "10", "1000"})
+        int runLength;
+
+        String[] tokens;
+        List<String> arrayList;
+        RunLengthList<String> runLengthList;
+        int[] indices;
+        int next;
+
+        @Setup(Level.Trial)
+        public void createInput() {
+            Random rnd = new Random(42);
+            String[] vocabulary = { "the", "of", "and", "to", "in", " ", "\n" };
+            tokens = new String[size];
+            for (int i = 0; i < size; ) {
+                String t = vocabulary[rnd.nextInt(vocabulary.length)];
+                for (int n = 1 + rnd.nextInt(2 * runLength); n > 0 && i < size; n--)
+                    tokens[i++] = t;
+            }
+            arrayList = new ArrayList<String>(Arrays.asList(tokens));
+            runLengthList = new RunLengthList<String>(arrayList);
+            indices = new int[4096];
+            for (int i = 0; i < indices.length; i++)
+                indices[i] = rnd.nextInt(size);
+        }
+
+        @Benchmark
+        @OperationsPerInvocation(1000000)
+        public List<String> buildArrayList() {
+            List<String> list = new ArrayList<String>();
+            for (String t : tokens)
+                list.add(t);
+            return list;
+        }
+
+        @Benchmark
+        @OperationsPerInvocation(1000000)
+        public List<String> buildRunLengthList() {
+            RunLengthList<String> list = new RunLengthList<String>();
+            for (String t : tokens)
+                list.addRun(t, 1);
+            return list;
+        }
+
+        @Benchmark
+        public String getArrayList() {
+            next = (next + 1) & (indices.length - 1);
+            return arrayList.get(indices[next]);
+        }
+
+        @Benchmark
+        public String getRunLengthList() {
+            next = (next + 1) & (indices.length - 1);
+            return runLengthList.get(indices[next]);
+        }
+
+        @Benchmark
+        @OperationsPerInvocation(1000000)
+        public void iterateArrayList(Blackhole bh) {
+            for (String t : arrayList)
+                bh.consume(t);
+        }
+
+        @Benchmark
+        @OperationsPerInvocation(1000000)
+        public void iterateRunLengthList(Blackhole bh) {
+            for (String t : runLengthList)
+                bh.consume(t);
+        }
+    }
+
+    The build and iterate benchmarks handle a million tokens per call, and @OperationsPerInvocation divides their times by a million, so all six results are in nanoseconds per element. If you change the size parameter, change the annotations to match.
+
+    To see the memory side of the trade-off, run the build benchmarks with -prof gc. Since each builds a new list, gc.alloc.rate.norm is close to the size of the list it builds, including the discarded arrays left behind as it grows. With a run length of one, RunLengthList is bigger than ArrayList, because it keeps an int as well as a reference for every element. With longer runs it shrinks in proportion to the run length, while ArrayList stays the same size.
+
+    % java -jar target/benchmarks.jar RunLengthListBenchmark -prof gc
+
+Caching Sensor Readings
+
+    The Custom Collection Implementations section wraps a sensor in TelemetryMap so that get doesn't wait for the sensor on every call. This benchmark measures what that buys, using a fake sensor that knows a fixed number of locations and takes a millisecond to answer. Copy TelemetryMap and FakeSensor into the benchmark project.
+
+    import java.util.concurrent.*;
+
+    // Answers like a remote sensor: only for locations it knows, after a delay.
+    public class FakeSensor implements TelemetryMap.Loader<Integer, Double> {
+        final int locations;
+        final long latencyNanos;
+
+        FakeSensor(int locations, long latency, TimeUnit unit) {
+            this.locations = locations;
+            this.latencyNanos = unit.toNanos(latency);
+        }
+
+        public Double load(Integer location) throws InterruptedException {
+            if (location < 0 || location >= locations)
+                return null;
+            TimeUnit.NANOSECONDS.sleep(latencyNanos);
+            return ThreadLocalRandom.current().nextGaussian() + 20;
+        }
+    }
+
+    import java.util.*;
+    import java.util.concurrent.*;
+    import org.openjdk.jmh.annotations.*;
+
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @State(Scope.Benchmark)
+    @Threads(8)
+    @Fork(2)
+    @Warmup(iterations = 5, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public class TelemetryBenchmark {
+
+        @Param({"1000"})
+        int locations;
+
+        @Param({"1000"})
+        long ttlMillis;
+
+        FakeSensor sensor;
+        ExecutorService refresher;
+        TelemetryMap<Integer, Double> map;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            sensor = new FakeSensor(locations, 1, TimeUnit.MILLISECONDS);
+            refresher = Executors.newFixedThreadPool(4);
+            List<Integer> all = new ArrayList<Integer>();
+            for (int i = 0; i < locations; i++)
+                all.add(i);
+            map = new TelemetryMap<Integer, Double>(all, sensor, ttlMillis,
+                                                    TimeUnit.MILLISECONDS, refresher);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            refresher.shutdownNow();
+        }
+
+        @Benchmark
+        public Double readSensor() throws InterruptedException {
+            return sensor.load(ThreadLocalRandom.current().nextInt(locations));
+        }
+
+        @Benchmark
+        public Double readMap() {
+            return map.get(ThreadLocalRandom.current().nextInt(locations));
+        }
+    }
+
+    The benchmark runs on eight threads sharing one map, so it measures contention as well as the cost of a lookup. Because what matters for a cache is how long callers wait, and how often they wait a long time, it uses SampleTime mode, which reports percentiles: readSensor's are all about a millisecond, while readMap's median should be a fraction of a microsecond, with the occasional slow sample from a caller that found a reading expired. With a one-second lifetime and constant traffic, refresh-ahead keeps such samples rare; try a ttlMillis close to the sensor's latency, or more locations than the traffic can keep warm, to see them become common.
+
+    % java -jar target/benchmarks.jar TelemetryBenchmark
+
+Array Views
+
+    The Custom Collection Implementations section finishes MyArrayList by overriding the AbstractList methods that an array can do better. This benchmark runs the same operations on the finished class and on the three-method version the section starts with, which it includes as SkeletalArrayList. Copy MyArrayList into the benchmark project as a top-level class.
+
+    import java.util.*;
+    import java.util.concurrent.*;
+    import org.openjdk.jmh.annotations.*;
+    import org.openjdk.jmh.infra.Blackhole;
+
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @State(Scope.Thread)
+    @Fork(2)
+    @Warmup(iterations = 5, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public class ArrayViewBenchmark {
+
+        // The three-method version from the start of the section.
+        static class SkeletalArrayList<T> extends AbstractList<T> {
+            private final T[] a;
+
+            SkeletalArrayList(T[] array) {
+                a = array;
+            }
+
+            public T get(int index) {
+                return a[index];
+            }
+
+            public T set(int index, T element) {
+                T oldValue = a[index];
+                a[index] = element;
+                return oldValue;
+            }
+
+            public int size() {
+                return a.length;
+            }
+        }
+
+        @Param({"1000", "1000000"})
+        int size;
+
+        @Param({"skeletal", "tuned"})
+        String impl;
+
+        String[] shuffled;
+        String[] array;
+        List<String> list;
+        String last;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            shuffled = Snippets.words(size, 42).toArray(new String[0]);
+            array = shuffled.clone();
+            list = impl.equals("tuned") ? new MyArrayList<String>(array)
+                                        : new SkeletalArrayList<String>(array);
+            last = new String(array[size - 1]);    // equal, but not the same object
+        }
+
+        @Benchmark
+        public boolean contains() {
+            return list.contains(last);
+        }
+
+        @Benchmark
+        public void forEach(Blackhole bh) {
+            list.forEach(bh::consume);
+        }
+
+        @Benchmark
+        public Object[] toArray() {
+            return list.toArray(new String[0]);
+        }
+
+        @Benchmark
+        public int hash() {
+            return list.hashCode();
+        }
+
+        @Benchmark
+        public List<String> sort() {
+            System.arraycopy(shuffled, 0, array, 0, size);    // unsort
+            list.sort(null);
+            return list;
+        }
+
+        @Benchmark
+        public long parallelStream() {
+            return list.parallelStream().mapToInt(String::length).sum();
+        }
+    }
+
+    The sort benchmark restores the shuffled order before each sort, so both versions always sort the same input; the copy takes a small, equal share of both results. The skeletal version doesn't implement RandomAccess, so its parallel stream uses the default spliterator, which hands out elements in batches taken from an iterator. Comparing parallelStream across the two versions shows the effect of the array spliterator, and is worth running on a machine with several cores.
+
+    % java -jar target/benchmarks.jar ArrayViewBenchmark
+
+Primitive Lists
+
+    The Catching and Handling Exceptions section replaces ListOfNumbers' boxed list with IntArrayList, which stores its values in an int[]. This benchmark compares the two at the sizes where that matters. Copy IntArrayList into the benchmark project.
+
+    import java.util.*;
+    import java.util.concurrent.*;
+    import org.openjdk.jmh.annotations.*;
+
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @State(Scope.Thread)
+    @Fork(value = 2, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+    @Warmup(iterations = 5, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public class PrimitiveListBenchmark {
+
+        @Param({"1000000", "10000000"})
+        int size;
+
+        int[] shuffled;
+        List<Integer> shuffledBoxed;
+        List<Integer> boxed;
+        IntArrayList ints;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            Random rnd = new Random(42);
+            shuffled = new int[size];
+            for (int i = 0; i < size; i++)
+                shuffled[i] = rnd.nextInt();
+            shuffledBoxed = new ArrayList<Integer>(size);
+            for (int v : shuffled)
+                shuffledBoxed.add(v);
+            boxed = fillBoxed();
+            ints = fillInts();
+        }
+
+        @Benchmark
+        public List<Integer> fillBoxed() {
+            List<Integer> list = new ArrayList<Integer>();
+            for (int i = 0; i < size; i++)
+                list.add(i);
+            return list;
+        }
+
+        @Benchmark
+        public IntArrayList fillInts() {
+            IntArrayList list = new IntArrayList();
+            for (int i = 0; i < size; i++)
+                list.add(i);
+            return list;
+        }
+
+        @Benchmark
+        public long iterateBoxed() {
+            long sum = 0;
+            for (int v : boxed)
+                sum += v;
+            return sum;
+        }
+
+        @Benchmark
+        public long iterateInts() {
+            long sum = 0;
+            for (int i = 0, n = ints.size(); i < n; i++)
+                sum += ints.getInt(i);
+            return sum;
+        }
+
+        @Benchmark
+        public List<Integer> sortBoxed() {
+            List<Integer> list = new ArrayList<Integer>(shuffledBoxed);
+            Collections.sort(list);
+            return list;
+        }
+
+        @Benchmark
+        public IntArrayList sortInts() {
+            IntArrayList list = new IntArrayList(size);
+            list.addAll(shuffled);
+            list.sort();
+            return list;
+        }
+    }
+
+    Both sort benchmarks copy the same shuffled numbers before sorting, so the copy is part of both results. Run the fill benchmarks with -prof gc to see the memory difference: gc.alloc.rate.norm for fillBoxed includes an Integer for every element above 127, as well as the growing array, while fillInts allocates only the array.
+
+    % java -jar target/benchmarks.jar PrimitiveListBenchmark -prof gc
+
+Writing Numbers to a File
+
+    The Catching and Handling Exceptions section gives writeList a second version that encodes rows straight into a direct ByteBuffer and writes them through a FileChannel. This benchmark writes ten million rows both ways. Copy IntArrayList into the benchmark project.
+
+    import java.io.*;
+    import java.nio.ByteBuffer;
+    import java.nio.channels.FileChannel;
+    import java.nio.charset.StandardCharsets;
+    import java.nio.file.*;
+    import java.util.*;
+    import java.util.concurrent.*;
+    import org.openjdk.jmh.annotations.*;
+
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @State(Scope.Thread)
+    @Fork(2)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 10)
+    public class WriteListBenchmark {
+
+        private static final byte[] PREFIX = "Value at: ".getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] SEPARATOR = " = ".getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] NEWLINE = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+        private static final int MAX_ROW = PREFIX.length + 11 + SEPARATOR.length + 11 + NEWLINE.length;
+
+        @Param({"10000000"})
+        int size;
+
+        IntArrayList list;
+        Path file;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            Random rnd = new Random(42);
+            list = new IntArrayList(size);
+            for (int i = 0; i < size; i++)
+                list.add(rnd.nextInt());
+            file = Files.createTempFile("writeList", ".txt");
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            System.out.printf("%n%d bytes written%n", Files.size(file));
+            Files.delete(file);
+        }
+
+        @Benchmark
+        public void printWriter() throws IOException {
+            try (PrintWriter out = new PrintWriter(new FileWriter(file.toFile()))) {
+                for (int i = 0; i < size; i++)
+                    out.println("Value at: " + i + " = " + list.getInt(i));
+            }
+        }
+
+        @Benchmark
+        public void channel() throws IOException {
+            try (FileChannel out = FileChannel.open(file, StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buf = ByteBuffer.allocateDirect(1 << 20);
+                byte[] digits = new byte[11];
+                for (int i = 0; i < size; i++) {
+                    if (buf.remaining() < MAX_ROW)
+                        drain(buf, out);
+                    buf.put(PREFIX);
+                    putInt(buf, i, digits);
+                    buf.put(SEPARATOR);
+                    putInt(buf, list.getInt(i), digits);
+                    buf.put(NEWLINE);
+                }
+                drain(buf, out);
+            }
+        }
+
+        private static void drain(ByteBuffer buf, FileChannel out) throws IOException {
+            buf.flip();
+            while (buf.hasRemaining())
+                out.write(buf);
+            buf.clear();
+        }
+
+        private static void putInt(ByteBuffer buf, int value, byte[] digits) {
+            int pos = digits.length;
+            int v = (value < 0) ? value : -value;
+            do {
+                int q = v / 10;
+                digits[--pos] = (byte) ('0' + (q * 10 - v));
+                v = q;
+            } while (v != 0);
+            if (value < 0)
+                digits[--pos] = '-';
+            buf.put(digits, pos, digits.length - pos);
+        }
+    }
+
+    Each benchmark writes the whole file once per call, so SingleShotTime is the natural mode. To convert a result to a throughput, divide the file size, which the tear-down method prints, by the time: with 308,717,633 bytes written, 1,500 ms is about 206 MB/s. The file lives in the temporary directory and neither version forces its data to disk, so the results measure getting the data to the operating system, not to the disk.
+
+    % java -jar target/benchmarks.jar WriteListBenchmark
+
+Copying Files
+
+    The try-with-resources section adds three copy methods that use FileChannel: transferTo, memory-mapping, and a parallel copy of chunks with positional reads and writes. This benchmark copies files from 1 KB to 1 GB with each method, and with the original stream version. Copy the four methods and their constants into a class named Copy in the benchmark project.
+
+    import java.io.*;
+    import java.nio.ByteBuffer;
+    import java.nio.channels.FileChannel;
+    import java.nio.file.*;
+    import java.util.*;
+    import java.util.concurrent.*;
+    import org.openjdk.jmh.annotations.*;
+
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @State(Scope.Benchmark)
+    @Fork(1)
+    @Warmup(iterations = 3, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public class FileCopyBenchmark {
+
+        @Param({"1024", "4096", "16384", "65536", "262144",
+                "1048576", "67108864", "1073741824"})
+        long size;
+
+        @Param({"streams", "transfer", "mapped", "parallel"})
+        String strategy;
+
+        String src;
+        String dest;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            Path dir = Paths.get(System.getProperty("copy.dir", System.getProperty("java.io.tmpdir")));
+            Path s = Files.createTempFile(dir, "copy", ".src");
+            ByteBuffer block = ByteBuffer.allocate(1 << 20);
+            new Random(42).nextBytes(block.array());
+            try (FileChannel out = FileChannel.open(s, StandardOpenOption.WRITE)) {
+                for (long pos = 0; pos < size; pos += block.capacity()) {
+                    block.clear();
+                    if (size - pos < block.capacity())
+                        block.limit((int) (size - pos));
+                    out.write(block);
+                }
+            }
+            src = s.toString();
+            dest = s.resolveSibling(s.getFileName() + ".dest").toString();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            Files.deleteIfExists(Paths.get(src));
+            Files.deleteIfExists(Paths.get(dest));
+        }
+
+        @Benchmark
+        public void copy() throws IOException {
+            switch (strategy) {
+            case "streams":  Copy.copyStreams(src, dest);  break;
+            case "transfer": Copy.copyTransfer(src, dest); break;
+            case "mapped":   Copy.copyMapped(src, dest);   break;
+            case "parallel": Copy.copyParallel(src, dest); break;
+            default:         throw new IllegalArgumentException(strategy);
+            }
+        }
+    }
+
+    The source file is written once per trial, with random data so that no layer of the storage stack can compress it. The system property copy.dir chooses the directory, which should be on the device you want to measure; the 1 GB trials need 2 GB free. Files smaller than memory will usually be in the page cache after the first copy, so the small sizes measure memory bandwidth and system call costs rather than the disk. If you want the disk in every measurement, drop the cache between iterations (on Linux, by writing 3 to /proc/sys/vm/drop_caches as root).
+
+    The results give the choices copy makes. For each size, note the fastest strategy. The sizes below a megabyte show whether streams ever beat transfer; on the one-core machine described in the try-with-resources section they never did, so copy doesn't use them. PARALLEL_THRESHOLD should be the size above which parallel beats transfer, which only a run on several cores can show. The mode is AverageTime, so the small files are copied thousands of times in each one-second iteration, while a gigabyte file is copied once or twice. To measure other sizes, pass the parameter on the command line, along with the directory for the forked JVMs; this run, for example, tries 20 GB, which needs 40 GB free:
+
+    % java -jar target/benchmarks.jar FileCopyBenchmark -p size=21474836480 -jvmArgsAppend -Dcopy.dir=/data
+
+Exceptions
+
+    The Chained Exceptions section adds LightException, whose stack trace can be full, lazy (a short trace captured with StackWalker and converted only when read) or absent. This benchmark measures throwing and catching in each mode, from 10 and 100 frames below the catch. Copy StackTraceMode, LazyStackTrace, LightException and LightRuntimeException into the benchmark project.
+
+    import java.util.concurrent.*;
+    import org.openjdk.jmh.annotations.*;
+
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @State(Scope.Thread)
+    @Fork(2)
+    @Warmup(iterations = 5, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public class ExceptionBenchmark {
+
+        @Param({"10", "100"})
+        int depth;
+
+        @Param({"FULL", "LAZY", "NONE"})
+        StackTraceMode mode;
+
+        @Benchmark
+        public Object throwAndCatch() {
+            try {
+                return recurse(depth);
+            } catch (LightException e) {
+                return e;
+            }
+        }
+
+        @Benchmark
+        public Object throwCatchAndPrint() {
+            try {
+                return recurse(depth);
+            } catch (LightException e) {
+                return e.getStackTrace();
+            }
+        }
+
+        // Throws from depth frames below the benchmark method.
+        private Object recurse(int n) throws LightException {
+            if (n == 0)
+                throw new LightException("failed", mode);
+            return recurse(n - 1);
+        }
+    }
+
+    recurse calls itself, so the JIT compiler can't inline it away, and the exception really does travel through depth frames. throwAndCatch measures the cost when the stack trace is never looked at, which is the usual case for exceptions used on a hot path; throwCatchAndPrint adds the cost of getting the stack trace, which is when LAZY mode does its conversion. FULL mode is the cost of an ordinary exception. Try a larger depth, such as 300, to see how the costs grow with the stack.
+
+    % java -jar target/benchmarks.jar ExceptionBenchmark
+
+Logging
+
+    The Chained Exceptions section adds AsyncFileHandler, a logging Handler that formats records into a lock-free ring buffer and writes them to a FileChannel from a background thread. This benchmark compares the time a logging call takes with it and with FileHandler, with four threads logging to one handler. Copy AsyncFileHandler and RecordEncoder into the benchmark project.
+
+    import java.io.*;
+    import java.nio.file.*;
+    import java.util.concurrent.*;
+    import java.util.logging.FileHandler;
+    import java.util.logging.Handler;
+    import java.util.logging.Logger;
+    import java.util.logging.SimpleFormatter;
+    import org.openjdk.jmh.annotations.*;
+
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @State(Scope.Benchmark)
+    @Threads(4)
+    @Fork(2)
+    @Warmup(iterations = 5, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public class LoggingBenchmark {
+
+        @Param({"file", "async-drop", "async-block"})
+        String handlerType;
+
+        Path file;
+        Handler handler;
+        Logger logger;
+        Exception failure;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            file = Files.createTempFile("logging", ".log");
+            switch (handlerType) {
+            case "file":
+                handler = new FileHandler(file.toString());
+                break;
+            case "async-drop":
+                handler = new AsyncFileHandler(file, 8192, AsyncFileHandler.OverflowPolicy.DROP);
+                break;
+            default:
+                handler = new AsyncFileHandler(file, 8192, AsyncFileHandler.OverflowPolicy.BLOCK);
+            }
+            handler.setFormatter(new SimpleFormatter());
+            logger = Logger.getLogger("LoggingBenchmark");
+            logger.setUseParentHandlers(false);
+            logger.addHandler(handler);
+            failure = new IOException("Cannot open OutFile.txt");
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            logger.removeHandler(handler);
+            handler.close();
+            if (handler instanceof AsyncFileHandler)
+                System.out.printf("%n%d records dropped%n",
+                                  ((AsyncFileHandler) handler).getDroppedCount());
+            Files.delete(file);
+        }
+
+        @Benchmark
+        public void message() {
+            logger.info("Entering try statement");
+        }
+
+        @Benchmark
+        public void exception() {
+            logger.log(java.util.logging.Level.WARNING, "Caught IOException", failure);
+        }
+    }
+
+    The JMH annotations and java.util.logging both have a class called Level, so the benchmark imports the logging classes one by one and names the logging Level in full. SampleTime mode shows the distribution of call times; look at the high percentiles as well as the median, because that's where waiting for the file shows up. With DROP, the tear-down method prints how many records were discarded: if the writer can't keep up with four threads logging as fast as they can, some are, and the benchmark measures the cost of not waiting for them.
+
+    % java -jar target/benchmarks.jar LoggingBenchmark
+
+Stacks
+
+    The How to Throw Exceptions section adds ArrayStack, an array-backed stack for a single thread, and TreiberStack, a lock-free stack with elimination backoff. This benchmark measures a push followed by a pop, which leaves each stack as it found it, so the measurement can run indefinitely. Copy ArrayStack and TreiberStack into the benchmark project.
+
+    import java.util.*;
+    import java.util.concurrent.*;
+    import org.openjdk.jmh.annotations.*;
+
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Fork(2)
+    @Warmup(iterations = 5, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public class StackBenchmark {
+
+        // One stack of each kind, shared by all the benchmark's threads.
+        @State(Scope.Benchmark)
+        public static class Shared {
+            final TreiberStack<Integer> treiber = new TreiberStack<Integer>();
+            final ConcurrentLinkedDeque<Integer> deque = new ConcurrentLinkedDeque<Integer>();
+            final Stack<Integer> stack = new Stack<Integer>();
+        }
+
+        // A stack for each thread, for the single-threaded stacks.
+        @State(Scope.Thread)
+        public static class Local {
+            final ArrayStack<Integer> arrayStack = new ArrayStack<Integer>();
+            final ArrayDeque<Integer> arrayDeque = new ArrayDeque<Integer>();
+        }
+
+        static final Integer ITEM = 42;
+
+        @Benchmark
+        public Integer treiber(Shared s) {
+            s.treiber.push(ITEM);
+            return s.treiber.pollOrNull();
+        }
+
+        @Benchmark
+        public Integer concurrentLinkedDeque(Shared s) {
+            s.deque.push(ITEM);
+            return s.deque.pollFirst();
+        }
+
+        @Benchmark
+        public Integer synchronizedStack(Shared s) {
+            s.stack.push(ITEM);
+            synchronized (s.stack) {
+                return s.stack.isEmpty() ? null : s.stack.pop();
+            }
+        }
+
+        @Benchmark
+        public Integer arrayStack(Local l) {
+            l.arrayStack.push(ITEM);
+            return l.arrayStack.pollOrNull();
+        }
+
+        @Benchmark
+        public Integer arrayDeque(Local l) {
+            l.arrayDeque.push(ITEM);
+            return l.arrayDeque.pollFirst();
+        }
+    }
+
+    The thread-safe stacks are in a state object with Scope.Benchmark, so all the benchmark's threads share one of each; the single-threaded ones are in a Scope.Thread object, so each thread has its own and those results show what a stack costs without sharing. java.util.Stack synchronizes push and pop separately, so the benchmark holds the stack's lock while it checks for emptiness and pops, as any real code sharing a Stack would have to. The number of threads is set on the command line; to cover 1 to 64 threads, run the benchmark once for each:
+
+    % for t in 1 2 4 8 16 32 64; do java -jar target/benchmarks.jar StackBenchmark -t $t -rff stack-$t.csv; done
+
+    Results with more threads than the machine has cores measure time-slicing as much as contention, so compare them with care.
+
+An Indexable Linked List
+
+    The Creating Exception Classes section adds IndexedLinkedList, a linked list of 64-element leaves with counts in a tree above them. This benchmark compares it with ArrayList and LinkedList in two ways. The mixed benchmarks read, insert or remove at a random position, with readPercent of the operations reads; the cursor benchmarks insert a run of 100 elements at one position through a cursor or ListIterator and then remove them. Copy IndexedLinkedList and its exception classes into the benchmark project.
+
+    import java.util.*;
+    import java.util.concurrent.*;
+    import org.openjdk.jmh.annotations.*;
+
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @State(Scope.Thread)
+    @Fork(2)
+    @Warmup(iterations = 5, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public class IndexedListBenchmark {
+        @Param({"1000", "100000"})
+        int size;
+
+        // Percentage of operations that read; the rest are split between inserts and removes.
+        @Param({"90", "50"})
+        int readPercent;
+
+        IndexedLinkedList<Integer> indexed;
+        List<Integer> arrayList;
+        List<Integer> linkedList;
+        SplittableRandom random;
+        boolean insert;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            indexed = new IndexedLinkedList<>();
+            arrayList = new ArrayList<>();
+            linkedList = new LinkedList<>();
+            for (int i = 0; i < size; i++) {
+                indexed.add(i);
+                arrayList.add(i);
+                linkedList.add(i);
+            }
+            random = new SplittableRandom(42);
+        }
+
+        // Reads, inserts and removes at random positions. Inserts and removes
+        // take turns, so the list stays within one element of its starting size.
+        @Benchmark
+        public Integer mixedIndexed() throws LinkedListException {
+            int n = random.nextInt(size);
+            int op = random.nextInt(100);
+            if (op < readPercent)
+                return indexed.objectAt(n);
+            if (insert = !insert) {
+                indexed.add(n, op);
+                return op;
+            }
+            return indexed.removeAt(n);
+        }
+
+        @Benchmark
+        public Integer mixedArrayList() {
+            return mixed(arrayList);
+        }
+
+        @Benchmark
+        public Integer mixedLinkedList() {
+            return mixed(linkedList);
+        }
+
+        private Integer mixed(List<Integer> list) {
+            int n = random.nextInt(size);
+            int op = random.nextInt(100);
+            if (op < readPercent)
+                return list.get(n);
+            if (insert = !insert) {
+                list.add(n, op);
+                return op;
+            }
+            return list.remove(n);
+        }
+
+        // Inserts a batch of 100 elements at one random position, then removes them.
+        @Benchmark
+        public int cursorIndexed() throws LinkedListException {
+            int n = random.nextInt(size);
+            IndexedLinkedList<Integer>.Cursor c = indexed.cursor(n);
+            for (int i = 0; i < 100; i++)
+                c.add(i);
+            for (int i = 0; i < 100; i++)
+                indexed.removeAt(n);
+            return indexed.size();
+        }
+
+        @Benchmark
+        public int cursorArrayList() {
+            return cursor(arrayList);
+        }
+
+        @Benchmark
+        public int cursorLinkedList() {
+            return cursor(linkedList);
+        }
+
+        private int cursor(List<Integer> list) {
+            int n = random.nextInt(size);
+            ListIterator<Integer> it = list.listIterator(n);
+            for (int i = 0; i < 100; i++)
+                it.add(i);
+            for (int i = 0; i < 100; i++) {
+                it.previous();
+                it.remove();
+            }
+            return list.size();
+        }
+    }
+
+    The list is rebuilt before each iteration, because the inserts and removes change it. LinkedList has to walk to the position in both kinds of benchmark, so expect it to fall far behind as the list grows; ArrayList copies up to the whole array on every insert and remove, but it copies fast. In a quick run outside JMH with 100,000 elements and half the operations reads, IndexedLinkedList took about 400 ns per operation, ArrayList about 2.5 µs, and LinkedList about 100 µs.
+
+    % java -jar target/benchmarks.jar IndexedListBenchmark
+
+Bloom Filters
+
+    The Set Interface section adds BlockedBloomFilter, which DuplicateFinder uses to screen words before it looks for them on disk. This benchmark compares testing a word against the filter with testing it against a HashSet of the same words, both for words that are present and for words that are absent, the common case when looking for duplicates. Copy BlockedBloomFilter into the benchmark project.
+
+    import java.util.*;
+    import java.util.concurrent.*;
+    import org.openjdk.jmh.annotations.*;
+
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @State(Scope.Thread)
+    @Fork(value = 2, jvmArgs = "-Xmx4g")
+    @Warmup(iterations = 5, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public class BloomFilterBenchmark {
+        @Param({"1000000", "10000000"})
+        int size;
+
+        @Param({"0.02"})
+        double fpp;
+
+        String[] words;
+        String[] absent;
+        BlockedBloomFilter filter;
+        Set<String> set;
+        int i;
+
+        @Setup
+        public void setUp() {
+            SplittableRandom random = new SplittableRandom(42);
+            words = new String[size];
+            absent = new String[size];
+            for (int j = 0; j < size; j++) {
+                words[j] = "w" + random.nextLong();
+                absent[j] = "a" + random.nextLong();
+            }
+            filter = new BlockedBloomFilter(size, fpp);
+            set = new HashSet<String>();
+            for (String w : words) {
+                filter.add(w);
+                set.add(w);
+            }
+        }
+
+        private int next() {
+            if (++i == size)
+                i = 0;
+            return i;
+        }
+
+        // The common case in FindDups: a word that hasn't been seen before.
+        @Benchmark
+        public boolean filterMiss() {
+            return filter.mightContain(absent[next()]);
+        }
+
+        @Benchmark
+        public boolean hashSetMiss() {
+            return set.contains(absent[next()]);
+        }
+
+        @Benchmark
+        public boolean filterHit() {
+            return filter.mightContain(words[next()]);
+        }
+
+        @Benchmark
+        public boolean hashSetHit() {
+            return set.contains(words[next()]);
+        }
+    }
+
+    The words are drawn once, in setUp, and the benchmarks step through them in turn so that each call tests a different word. A String caches its hashCode, so after the first pass over the words a HashSet lookup skips hashing altogether, while the filter computes its 64-bit hash every time; the HashSet pays instead in memory, and once its entries no longer fit in the cache, in the misses of following them. Compare the two sizes to see where that happens, and note the -Xmx setting: ten million words in a HashSet need more than the default heap on some machines.
+
+    % java -jar target/benchmarks.jar BloomFilterBenchmark
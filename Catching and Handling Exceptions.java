@@ -112,3 +112,508 @@ public class ListOfNumbers {
         }
     }
 }
+
+Storing Larger Lists of Numbers
+
+ListOfNumbers stores ten numbers, and its storage doesn't matter. If SIZE were ten million, it would. An ArrayList<Integer> or a Vector<Integer> holds references to Integer objects, not the numbers themselves, so every element costs a four- or eight-byte reference plus an Integer object of about sixteen bytes: roughly twenty bytes to store four bytes of data, with every number in a separate object for the garbage collector to trace. (new Integer(i) has been deprecated since Java 9; Integer.valueOf(i), which autoboxing uses, reuses a cached object for values from -128 to 127, but that doesn't help with ten million distinct numbers.)
+
+IntArrayList keeps the numbers themselves in an int[], at four bytes each. It grows the way Vector does: by doubling its capacity when it runs out, or by a fixed capacityIncrement if you give one to the constructor. A doubling list makes fewer copies as it grows; a fixed increment wastes less space at the end of the array when you know roughly how big the list will get. ensureCapacity and trimToSize work as they do for ArrayList. Besides adding and getting single values, it adds whole arrays with System.arraycopy, sorts and searches with the int versions of Arrays.sort and Arrays.binarySearch, and visits its values with forEachInt, which takes an IntConsumer, so none of these operations create an Integer. Where an API needs a List<Integer>, asList returns a view that boxes values as they pass through it.
+
+import java.util.*;
+import java.util.function.IntConsumer;
+
+public class IntArrayList {
+    private static final int[] EMPTY = {};
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+    private int[] elements;
+    private int size;
+    private final int capacityIncrement;   // 0 means double
+
+    public IntArrayList() {
+        this(10, 0);
+    }
+
+    public IntArrayList(int initialCapacity) {
+        this(initialCapacity, 0);
+    }
+
+    // As with Vector, a capacityIncrement of 0 doubles the capacity each time it runs out.
+    public IntArrayList(int initialCapacity, int capacityIncrement) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal capacity: " + initialCapacity);
+        if (capacityIncrement < 0)
+            throw new IllegalArgumentException("Illegal increment: " + capacityIncrement);
+        elements = (initialCapacity == 0) ? EMPTY : new int[initialCapacity];
+        this.capacityIncrement = capacityIncrement;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int getInt(int index) {
+        Objects.checkIndex(index, size);
+        return elements[index];
+    }
+
+    public int setInt(int index, int value) {
+        Objects.checkIndex(index, size);
+        int old = elements[index];
+        elements[index] = value;
+        return old;
+    }
+
+    public void add(int value) {
+        if (size == elements.length)
+            grow(size + 1);
+        elements[size++] = value;
+    }
+
+    public void add(int index, int value) {
+        Objects.checkIndex(index, size + 1);
+        if (size == elements.length)
+            grow(size + 1);
+        System.arraycopy(elements, index, elements, index + 1, size - index);
+        elements[index] = value;
+        size++;
+    }
+
+    public void addAll(int[] values) {
+        addAll(values, 0, values.length);
+    }
+
+    public void addAll(int[] values, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, values.length);
+        ensureCapacity(size + length);
+        System.arraycopy(values, offset, elements, size, length);
+        size += length;
+    }
+
+    public int removeAt(int index) {
+        Objects.checkIndex(index, size);
+        int old = elements[index];
+        System.arraycopy(elements, index + 1, elements, index, size - index - 1);
+        size--;
+        return old;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public void ensureCapacity(int minCapacity) {
+        if (minCapacity > elements.length)
+            grow(minCapacity);
+    }
+
+    public void trimToSize() {
+        if (size < elements.length)
+            elements = (size == 0) ? EMPTY : Arrays.copyOf(elements, size);
+    }
+
+    private void grow(int minCapacity) {
+        if (minCapacity < 0 || minCapacity > MAX_CAPACITY)
+            throw new OutOfMemoryError("Required array length too large");
+        int old = elements.length;
+        long preferred = old + (long) ((capacityIncrement > 0) ? capacityIncrement : Math.max(old, 10));
+        int capacity = (int) Math.min(Math.max(preferred, minCapacity), MAX_CAPACITY);
+        elements = Arrays.copyOf(elements, capacity);
+    }
+
+    public void sort() {
+        Arrays.sort(elements, 0, size);
+    }
+
+    // The list must be sorted. Returns the index of value, or (-(insertion point) - 1).
+    public int binarySearch(int value) {
+        return Arrays.binarySearch(elements, 0, size, value);
+    }
+
+    public void forEachInt(IntConsumer action) {
+        int[] a = elements;
+        int n = size;
+        for (int i = 0; i < n; i++)
+            action.accept(a[i]);
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(elements, size);
+    }
+
+    // A List<Integer> view; changes to either are visible in the other.
+    public List<Integer> asList() {
+        return new View();
+    }
+
+    private class View extends AbstractList<Integer> implements RandomAccess {
+        public Integer get(int index) {
+            return getInt(index);
+        }
+
+        public Integer set(int index, Integer value) {
+            return setInt(index, value);
+        }
+
+        public void add(int index, Integer value) {
+            IntArrayList.this.add(index, value);
+            modCount++;
+        }
+
+        public Integer remove(int index) {
+            int old = removeAt(index);
+            modCount++;
+            return old;
+        }
+
+        public void clear() {
+            IntArrayList.this.clear();
+            modCount++;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public void sort(Comparator<? super Integer> c) {
+            if (c == null || c == Comparator.naturalOrder())
+                IntArrayList.this.sort();
+            else
+                super.sort(c);
+        }
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0)
+                sb.append(", ");
+            sb.append(elements[i]);
+        }
+        return sb.append(']').toString();
+    }
+}
+
+The index checks use Objects.checkIndex, so, like ArrayList's get, getInt throws IndexOutOfBoundsException for an index outside the list, even one that lies inside the array's spare capacity.
+
+For numbers too large for an int, LongArrayList is the same class with long in place of int wherever it refers to a value, using LongConsumer and the long versions of the Arrays methods. Indexes and sizes stay ints, as they are for arrays:
+
+import java.util.*;
+import java.util.function.LongConsumer;
+
+public class LongArrayList {
+    private static final long[] EMPTY = {};
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+    private long[] elements;
+    private int size;
+    private final int capacityIncrement;   // 0 means double
+
+    public LongArrayList() {
+        this(10, 0);
+    }
+
+    public LongArrayList(int initialCapacity) {
+        this(initialCapacity, 0);
+    }
+
+    // As with Vector, a capacityIncrement of 0 doubles the capacity each time it runs out.
+    public LongArrayList(int initialCapacity, int capacityIncrement) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal capacity: " + initialCapacity);
+        if (capacityIncrement < 0)
+            throw new IllegalArgumentException("Illegal increment: " + capacityIncrement);
+        elements = (initialCapacity == 0) ? EMPTY : new long[initialCapacity];
+        this.capacityIncrement = capacityIncrement;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long getLong(int index) {
+        Objects.checkIndex(index, size);
+        return elements[index];
+    }
+
+    public long setLong(int index, long value) {
+        Objects.checkIndex(index, size);
+        long old = elements[index];
+        elements[index] = value;
+        return old;
+    }
+
+    public void add(long value) {
+        if (size == elements.length)
+            grow(size + 1);
+        elements[size++] = value;
+    }
+
+    public void add(int index, long value) {
+        Objects.checkIndex(index, size + 1);
+        if (size == elements.length)
+            grow(size + 1);
+        System.arraycopy(elements, index, elements, index + 1, size - index);
+        elements[index] = value;
+        size++;
+    }
+
+    public void addAll(long[] values) {
+        addAll(values, 0, values.length);
+    }
+
+    public void addAll(long[] values, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, values.length);
+        ensureCapacity(size + length);
+        System.arraycopy(values, offset, elements, size, length);
+        size += length;
+    }
+
+    public long removeAt(int index) {
+        Objects.checkIndex(index, size);
+        long old = elements[index];
+        System.arraycopy(elements, index + 1, elements, index, size - index - 1);
+        size--;
+        return old;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public void ensureCapacity(int minCapacity) {
+        if (minCapacity > elements.length)
+            grow(minCapacity);
+    }
+
+    public void trimToSize() {
+        if (size < elements.length)
+            elements = (size == 0) ? EMPTY : Arrays.copyOf(elements, size);
+    }
+
+    private void grow(int minCapacity) {
+        if (minCapacity < 0 || minCapacity > MAX_CAPACITY)
+            throw new OutOfMemoryError("Required array length too large");
+        int old = elements.length;
+        long preferred = old + (long) ((capacityIncrement > 0) ? capacityIncrement : Math.max(old, 10));
+        int capacity = (int) Math.min(Math.max(preferred, minCapacity), MAX_CAPACITY);
+        elements = Arrays.copyOf(elements, capacity);
+    }
+
+    public void sort() {
+        Arrays.sort(elements, 0, size);
+    }
+
+    // The list must be sorted. Returns the index of value, or (-(insertion point) - 1).
+    public int binarySearch(long value) {
+        return Arrays.binarySearch(elements, 0, size, value);
+    }
+
+    public void forEachLong(LongConsumer action) {
+        long[] a = elements;
+        int n = size;
+        for (int i = 0; i < n; i++)
+            action.accept(a[i]);
+    }
+
+    public long[] toArray() {
+        return Arrays.copyOf(elements, size);
+    }
+
+    // A List<Long> view; changes to either are visible in the other.
+    public List<Long> asList() {
+        return new View();
+    }
+
+    private class View extends AbstractList<Long> implements RandomAccess {
+        public Long get(int index) {
+            return getLong(index);
+        }
+
+        public Long set(int index, Long value) {
+            return setLong(index, value);
+        }
+
+        public void add(int index, Long value) {
+            LongArrayList.this.add(index, value);
+            modCount++;
+        }
+
+        public Long remove(int index) {
+            long old = removeAt(index);
+            modCount++;
+            return old;
+        }
+
+        public void clear() {
+            LongArrayList.this.clear();
+            modCount++;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public void sort(Comparator<? super Long> c) {
+            if (c == null || c == Comparator.naturalOrder())
+                LongArrayList.this.sort();
+            else
+                super.sort(c);
+        }
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0)
+                sb.append(", ");
+            sb.append(elements[i]);
+        }
+        return sb.append(']').toString();
+    }
+}
+
+Here is ListOfNumbers, in the version with exception handlers, rewritten to use IntArrayList. The only changes are the type of the list, the calls that add and get elements, and the exception caught: Vector's elementAt throws ArrayIndexOutOfBoundsException, while getInt throws its superclass, IndexOutOfBoundsException.
+
+import java.io.*;
+
+public class ListOfNumbers {
+    private IntArrayList list;
+    private static final int SIZE = 10;
+
+    public ListOfNumbers () {
+        list = new IntArrayList(SIZE);
+        for (int i = 0; i < SIZE; i++)
+            list.add(i);
+    }
+
+    public void writeList() {
+        PrintWriter out = null;
+
+        try {
+            System.out.println("Entering try statement");
+            out = new PrintWriter(new FileWriter("OutFile.txt"));
+
+            for (int i = 0; i < SIZE; i++)
+                out.println("Value at: " + i + " = " + list.getInt(i));
+        } catch (IndexOutOfBoundsException e) {
+            System.err.println("Caught IndexOutOfBoundsException: " +
+                                 e.getMessage());
+        } catch (IOException e) {
+            System.err.println("Caught IOException: " + e.getMessage());
+        } finally {
+            if (out != null) {
+                System.out.println("Closing PrintWriter");
+                out.close();
+            } else {
+                System.out.println("PrintWriter not open");
+            }
+        }
+    }
+}
+
+With ten million elements, the ArrayList<Integer> version of the list occupies about 215 megabytes and the IntArrayList version 40. The PrimitiveListBenchmark in Benchmarking Collections measures filling, iterating over and sorting both kinds of list; the primitive list is faster at all three, because it allocates nothing per element and its values sit next to each other in memory.
+
+Writing Larger Lists Quickly
+
+Storing ten million numbers compactly is half the job; writeList still has to write them. For every element, the version above builds a String by concatenation, which means converting both numbers to Strings and copying all the pieces into a new one. Then println encodes those characters back into bytes and passes them through two layers of buffering. At ten million rows, that formatting is where most of the time goes.
+
+The version below writes bytes directly. The fixed parts of each row are encoded into byte arrays once, in static fields. The numbers are converted to ASCII digits by putInt, which works from the last digit to the first in a small reusable array, so no String is created. Everything goes into a one-megabyte direct ByteBuffer, and when there isn't room for another row, drain writes the contents to a FileChannel in one call and empties the buffer for reuse. A direct buffer is used because it lives outside the Java heap, where the channel can pass it to the operating system without copying it first.
+
+The exception handling is the same as before: an IOException from opening or writing the file and an IndexOutOfBoundsException from getInt are caught and reported, and the finally block closes the channel if it was opened. The one new case is close itself, which can fail for a FileChannel; PrintWriter's close never throws, because PrintWriter hides its exceptions. The output file is identical, byte for byte.
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+public class ListOfNumbers {
+    private IntArrayList list;
+    private static final int SIZE = 10;
+
+    private static final byte[] PREFIX = "Value at: ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SEPARATOR = " = ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NEWLINE = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+    private static final int MAX_ROW = PREFIX.length + 11 + SEPARATOR.length + 11 + NEWLINE.length;
+
+    public ListOfNumbers () {
+        list = new IntArrayList(SIZE);
+        for (int i = 0; i < SIZE; i++)
+            list.add(i);
+    }
+
+    public void writeList() {
+        FileChannel out = null;
+
+        try {
+            System.out.println("Entering try statement");
+            out = FileChannel.open(Paths.get("OutFile.txt"),
+                                   StandardOpenOption.CREATE,
+                                   StandardOpenOption.WRITE,
+                                   StandardOpenOption.TRUNCATE_EXISTING);
+            ByteBuffer buf = ByteBuffer.allocateDirect(1 << 20);
+            byte[] digits = new byte[11];
+
+            for (int i = 0; i < SIZE; i++) {
+                if (buf.remaining() < MAX_ROW)
+                    drain(buf, out);
+                buf.put(PREFIX);
+                putInt(buf, i, digits);
+                buf.put(SEPARATOR);
+                putInt(buf, list.getInt(i), digits);
+                buf.put(NEWLINE);
+            }
+            drain(buf, out);
+        } catch (IndexOutOfBoundsException e) {
+            System.err.println("Caught IndexOutOfBoundsException: " +
+                                 e.getMessage());
+        } catch (IOException e) {
+            System.err.println("Caught IOException: " + e.getMessage());
+        } finally {
+            if (out != null) {
+                System.out.println("Closing FileChannel");
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    System.err.println("Caught IOException: " + e.getMessage());
+                }
+            } else {
+                System.out.println("FileChannel not open");
+            }
+        }
+    }
+
+    private static void drain(ByteBuffer buf, FileChannel out) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining())
+            out.write(buf);
+        buf.clear();
+    }
+
+    // Writes the decimal digits of value, as Integer.toString would, without creating a String.
+    private static void putInt(ByteBuffer buf, int value, byte[] digits) {
+        int pos = digits.length;
+        int v = (value < 0) ? value : -value;    // negative, so MIN_VALUE works too
+        do {
+            int q = v / 10;
+            digits[--pos] = (byte) ('0' + (q * 10 - v));
+            v = q;
+        } while (v != 0);
+        if (value < 0)
+            digits[--pos] = '-';
+        buf.put(digits, pos, digits.length - pos);
+    }
+}
+
+putInt makes the number negative before taking it apart, instead of positive, because Integer.MIN_VALUE has no positive counterpart in an int. For a negative number, q * 10 - v is the value of the last digit.
+
+The WriteListBenchmark in Benchmarking Collections writes ten million rows of random numbers both ways. On a single-core machine, writing about 300 megabytes to the page cache, the PrintWriter version managed about 110 MB/s and the channel version about 210 MB/s. The channel version spends a larger share of its time in the write calls themselves, so the gap narrows when the disk, rather than the processor, is the limit.
@@ -48,3 +48,502 @@ try {
                    elements[i].getMethodName());
     }
 }
+
+Cheaper Exceptions
+
+Creating an exception is much more expensive than creating an ordinary object, and most of the cost is the stack trace. Throwable's constructor calls fillInStackTrace, which walks every frame of the current thread's stack and records it, so the deeper the stack, the more an exception costs, whether or not anyone ever looks at the trace. Code that throws an exception once in a while never notices. Code that throws in a loop, such as a parser that signals bad input with an exception, or a wrapper that converts an IOException into a SampleException for every record it processes, can spend most of its time filling in stack traces that are discarded as soon as the exception is caught.
+
+Throwable has a constructor that takes a writableStackTrace argument and leaves the stack trace empty when it is false, but an empty trace makes an exception hard to debug when it does escape. The classes below let the code that creates the exception choose, with a StackTraceMode:
+
+    FULL is the usual stack trace, for exceptions that are exceptional.
+    LAZY records at most 16 frames, using the StackWalker class, and keeps them as StackWalker.StackFrame objects. They are converted to StackTraceElement objects, which is what getStackTrace returns, only when the stack trace is asked for.
+    NONE records no stack trace at all, for exceptions that serve as a way of returning a result and are always caught. 
+
+In every mode, the message and the cause are kept as usual, so a chain of exceptions stays intact and getCause works as before. There are two classes, because Java has no multiple inheritance of classes and an exception family needs both checked and unchecked members: LightException extends Exception, and LightRuntimeException extends RuntimeException. They are identical apart from their names and superclasses. Here is the mode, the two exception classes, and the class that holds a lazy trace.
+
+public enum StackTraceMode {
+    FULL,   // the usual stack trace, captured when the exception is created
+    LAZY,   // up to LazyStackTrace.DEPTH frames, converted only when asked for
+    NONE    // no stack trace
+}
+
+import java.io.*;
+
+public class LightException extends Exception {
+    private final StackTraceMode mode;
+    private LazyStackTrace lazy;
+
+    public LightException(String message, StackTraceMode mode) {
+        this(message, null, mode);
+    }
+
+    public LightException(String message, Throwable cause, StackTraceMode mode) {
+        super(message, cause);    // calls fillInStackTrace before mode is set
+        this.mode = mode;
+        fillInStackTrace();
+    }
+
+    public Throwable fillInStackTrace() {
+        if (mode == StackTraceMode.FULL)
+            return super.fillInStackTrace();
+        if (mode == StackTraceMode.LAZY)
+            lazy = new LazyStackTrace();
+        return this;
+    }
+
+    synchronized void materialize() {
+        if (lazy != null) {
+            setStackTrace(lazy.toArray());
+            lazy = null;
+        }
+    }
+
+    public StackTraceElement[] getStackTrace() {
+        LazyStackTrace.materialize(this);
+        return super.getStackTrace();
+    }
+
+    public void printStackTrace(PrintStream s) {
+        LazyStackTrace.materialize(this);
+        super.printStackTrace(s);
+    }
+
+    public void printStackTrace(PrintWriter s) {
+        LazyStackTrace.materialize(this);
+        super.printStackTrace(s);
+    }
+}
+
+import java.io.*;
+
+public class LightRuntimeException extends RuntimeException {
+    private final StackTraceMode mode;
+    private LazyStackTrace lazy;
+
+    public LightRuntimeException(String message, StackTraceMode mode) {
+        this(message, null, mode);
+    }
+
+    public LightRuntimeException(String message, Throwable cause, StackTraceMode mode) {
+        super(message, cause);    // calls fillInStackTrace before mode is set
+        this.mode = mode;
+        fillInStackTrace();
+    }
+
+    public Throwable fillInStackTrace() {
+        if (mode == StackTraceMode.FULL)
+            return super.fillInStackTrace();
+        if (mode == StackTraceMode.LAZY)
+            lazy = new LazyStackTrace();
+        return this;
+    }
+
+    synchronized void materialize() {
+        if (lazy != null) {
+            setStackTrace(lazy.toArray());
+            lazy = null;
+        }
+    }
+
+    public StackTraceElement[] getStackTrace() {
+        LazyStackTrace.materialize(this);
+        return super.getStackTrace();
+    }
+
+    public void printStackTrace(PrintStream s) {
+        LazyStackTrace.materialize(this);
+        super.printStackTrace(s);
+    }
+
+    public void printStackTrace(PrintWriter s) {
+        LazyStackTrace.materialize(this);
+        super.printStackTrace(s);
+    }
+}
+
+import java.util.*;
+import java.util.stream.*;
+
+final class LazyStackTrace {
+    static final int DEPTH = 16;
+
+    private static final StackWalker WALKER =
+        StackWalker.getInstance(EnumSet.of(StackWalker.Option.RETAIN_CLASS_REFERENCE), DEPTH + 8);
+
+    private final List<StackWalker.StackFrame> frames;
+
+    // Skips this constructor and the exception's own constructors and fillInStackTrace.
+    LazyStackTrace() {
+        frames = WALKER.walk(s -> s
+            .dropWhile(f -> f.getDeclaringClass() == LazyStackTrace.class
+                         || Throwable.class.isAssignableFrom(f.getDeclaringClass()))
+            .limit(DEPTH)
+            .collect(Collectors.toList()));
+    }
+
+    StackTraceElement[] toArray() {
+        StackTraceElement[] elements = new StackTraceElement[frames.size()];
+        for (int i = 0; i < elements.length; i++)
+            elements[i] = frames.get(i).toStackTraceElement();
+        return elements;
+    }
+
+    // Converts the lazy traces of t, its causes and its suppressed exceptions.
+    static void materialize(Throwable t) {
+        materialize(t, Collections.newSetFromMap(new IdentityHashMap<Throwable, Boolean>()));
+    }
+
+    private static void materialize(Throwable t, Set<Throwable> seen) {
+        if (t == null || !seen.add(t))
+            return;
+        if (t instanceof LightException)
+            ((LightException) t).materialize();
+        else if (t instanceof LightRuntimeException)
+            ((LightRuntimeException) t).materialize();
+        for (Throwable s : t.getSuppressed())
+            materialize(s, seen);
+        materialize(t.getCause(), seen);
+    }
+}
+
+Throwable's constructor calls fillInStackTrace before the subclass's constructor has had a chance to set mode, so LightException's version does nothing when mode is null, and the constructor calls it again once mode is set. Throwable also prints stack traces through private methods that a subclass can't override. So getStackTrace and both printStackTrace methods first convert any lazy trace in the exception, its causes and its suppressed exceptions, and then let Throwable do the rest. The one case this can't cover is a LightException with a lazy trace that is printed only as the cause of an exception from outside the family; its trace then appears empty unless someone has called getStackTrace on it before.
+
+With these classes, SampleException from the beginning of this section can be declared as:
+
+public class SampleException extends LightException {
+    public SampleException(String message, Throwable cause) {
+        super(message, cause, StackTraceMode.NONE);
+    }
+}
+
+and the catch block that wraps the IOException doesn't change at all.
+
+How much do the modes save? The ExceptionBenchmark in Benchmarking Collections throws an exception from 10 or 100 frames below the method that catches it. On one machine, throwing and catching from 10 frames down took about 2 microseconds in FULL mode and 0.6 in NONE; from 100 frames down, 14 and 7. Much of what remains in NONE mode is the cost of unwinding the frames themselves, which no choice of exception can avoid. LAZY mode was the slowest of the three, at about 9 microseconds from 10 frames down: StackWalker has a fixed cost of several microseconds for each walk, more than the JVM's own stack walk for a short stack. LAZY pays off only when the stack is deep and the trace is read: with the trace read from 100 frames down, it took 22 microseconds to FULL mode's 35. So, for exceptions on a hot path, use NONE; keep FULL for everything else; and consider LAZY for deep stacks where you log a short trace of every exception.
+
+Logging Without Waiting
+
+The Logging API example above makes one logging call for each frame of the stack trace, and FileHandler handles each call on the calling thread: it formats the record, writes it to the file, and flushes, while holding a lock that every other thread logging to the same handler must wait for. A program that logs from a busy loop, or from many threads at once, spends much of its time waiting for the log file.
+
+AsyncFileHandler moves the writing to a thread of its own. A thread that logs a record does only two things: it claims a slot in a ring buffer, a fixed array of slots used in rotation, and formats the record into the slot's byte array. A background thread takes the formatted records from the buffer in order, copies them into one large buffer, and writes that to a FileChannel in a single call whenever it runs out of records or room. A burst of records therefore becomes a few large writes, instead of one small write and flush per record.
+
+The ring buffer needs no lock. Each slot has a sequence number, which tells a thread whether the slot is free for it to fill, filled and ready to be written, or still waiting for the writer. A logging thread claims a slot by advancing a shared AtomicLong counter with compareAndSet, so two threads can never claim the same slot, and it marks the slot ready by setting the slot's sequence number. When every slot is full, the OverflowPolicy you choose decides what happens: DROP discards the record and counts it, so that logging never waits, while BLOCK makes the logging thread wait until the writer frees a slot, so that no record is ever lost.
+
+Formatting happens on the logging thread, into memory that belongs to the slot, so it has to be quick and it must not create garbage. RecordEncoder writes each record as UTF-8 straight into the slot's array: the timestamp, computed from the record's time in milliseconds without any date objects, the level, the logger name, the message, and, if the record has an exception, its stack trace and causes, in the same form that printStackTrace uses. Each frame is written from the StackTraceElement's fields, so no String is built for it. Records longer than the slot, 4 KB, are cut short and end with "...".
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.*;
+
+public class AsyncFileHandler extends Handler {
+    public enum OverflowPolicy { DROP, BLOCK }
+
+    private static final int RECORD_BYTES = 4096;    // longer records are truncated
+
+    // Each slot holds one formatted record. A slot whose sequence equals a
+    // producer's ticket is free for it; ticket + 1 means the record is ready
+    // for the writer; ticket + capacity means free again for the next lap.
+    private final RecordEncoder[] slots;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private long head;    // writer thread only
+
+    private final OverflowPolicy policy;
+    private final LongAdder dropped = new LongAdder();
+    private final Formatter messages = new SimpleFormatter();
+    private final FileChannel channel;
+    private final ByteBuffer batch = ByteBuffer.allocateDirect(1 << 18);
+    private final Thread writer;
+    private volatile long written;      // records written to the channel
+    private volatile boolean closed;
+
+    public AsyncFileHandler(Path file, int capacity, OverflowPolicy policy) throws IOException {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("capacity must be a power of two: " + capacity);
+        this.policy = policy;
+        slots = new RecordEncoder[capacity];
+        sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new RecordEncoder(RECORD_BYTES);
+            sequences.set(i, i);
+        }
+        mask = capacity - 1;
+        channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                                   StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        writer = new Thread(this::drain, "AsyncFileHandler " + file.getFileName());
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    public void publish(LogRecord record) {
+        if (closed || !isLoggable(record))
+            return;
+        long ticket = claim();
+        if (ticket < 0) {
+            dropped.increment();
+            return;
+        }
+        int i = (int) ticket & mask;
+        try {
+            slots[i].encode(record, messages);
+        } catch (RuntimeException e) {
+            slots[i].length = 0;
+            reportError(null, e, ErrorManager.FORMAT_FAILURE);
+        }
+        sequences.lazySet(i, ticket + 1);    // publish the record to the writer
+    }
+
+    // Returns a ticket for a free slot, or -1 if the buffer is full and the policy is DROP.
+    private long claim() {
+        long ticket = tail.get();
+        for (int spins = 0; ; ) {
+            long free = sequences.get((int) ticket & mask) - ticket;
+            if (free == 0) {
+                if (tail.compareAndSet(ticket, ticket + 1))
+                    return ticket;
+            } else if (free < 0) {    // the writer hasn't emptied this slot yet
+                if (policy == OverflowPolicy.DROP || closed)
+                    return -1;
+                if (++spins < 100)
+                    Thread.onSpinWait();
+                else
+                    LockSupport.parkNanos(10_000);
+            }
+            ticket = tail.get();
+        }
+    }
+
+    private void drain() {
+        int idle = 0;
+        while (true) {
+            int n = 0;
+            for (int i; sequences.get(i = (int) head & mask) == head + 1; n++) {
+                if (batch.remaining() < slots[i].length) {
+                    write();
+                    written = head;
+                }
+                batch.put(slots[i].bytes, 0, slots[i].length);
+                sequences.lazySet(i, head + mask + 1);    // free for the next lap
+                head++;
+            }
+            if (n > 0) {
+                idle = 0;
+                continue;
+            }
+            if (batch.position() > 0) {    // nothing more to batch, so write what we have
+                write();
+                written = head;
+            }
+            if (closed && tail.get() == head)
+                return;
+            if (++idle < 100)
+                Thread.onSpinWait();
+            else
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+    }
+
+    private void write() {
+        batch.flip();
+        try {
+            while (batch.hasRemaining())
+                channel.write(batch);
+        } catch (IOException e) {
+            reportError(null, e, ErrorManager.WRITE_FAILURE);
+        }
+        batch.clear();
+    }
+
+    // Waits until everything published so far has been written.
+    public void flush() {
+        long target = tail.get();
+        while (written < target && writer.isAlive())
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+    }
+
+    public synchronized void close() {
+        if (closed)
+            return;
+        flush();
+        closed = true;
+        try {
+            writer.join();
+            channel.force(false);
+            channel.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            reportError(null, e, ErrorManager.CLOSE_FAILURE);
+        }
+    }
+}
+
+import java.util.logging.*;
+
+// Formats a LogRecord as UTF-8 into a fixed array, without creating objects
+// for the timestamp or the stack frames.
+final class RecordEncoder {
+    private static final int MAX_CAUSES = 16;
+
+    final byte[] bytes;
+    int length;
+    private boolean full;
+
+    RecordEncoder(int size) {
+        bytes = new byte[size];
+    }
+
+    void encode(LogRecord record, Formatter messages) {
+        length = 0;
+        full = false;
+        timestamp(record.getMillis());
+        put(' ');
+        put(record.getLevel().getName());
+        put(' ');
+        if (record.getLoggerName() != null)
+            put(record.getLoggerName());
+        put(": ");
+        put(messages.formatMessage(record));
+        put('\n');
+        Throwable t = record.getThrown();
+        for (int n = 0; t != null && n < MAX_CAUSES; t = t.getCause(), n++) {
+            if (n > 0)
+                put("Caused by: ");
+            put(t.getClass().getName());
+            if (t.getLocalizedMessage() != null) {
+                put(": ");
+                put(t.getLocalizedMessage());
+            }
+            put('\n');
+            for (StackTraceElement e : t.getStackTrace()) {
+                put("\tat ");
+                put(e.getClassName());
+                put('.');
+                put(e.getMethodName());
+                put('(');
+                put(e.getFileName() == null ? "Unknown Source" : e.getFileName());
+                if (e.getLineNumber() >= 0) {
+                    put(':');
+                    put(e.getLineNumber(), 1);
+                }
+                put(")\n");
+            }
+        }
+        if (full) {    // end a truncated record with "...\n", not in the middle of a character
+            length = bytes.length - 4;
+            while (length > 0 && (bytes[length] & 0xC0) == 0x80)
+                length--;
+            full = false;
+            put("...\n");
+        }
+    }
+
+    private void put(char c) {
+        if (length < bytes.length)
+            bytes[length++] = (byte) c;
+        else
+            full = true;
+    }
+
+    private void put(String s) {
+        for (int i = 0, n = s.length(); i < n; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                put(c);
+            } else if (c < 0x800) {
+                putBytes(0xC0 | c >> 6, 0x80 | c & 0x3F, -1, -1);
+            } else if (Character.isHighSurrogate(c) && i + 1 < n
+                       && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                putBytes(0xF0 | cp >> 18, 0x80 | cp >> 12 & 0x3F,
+                         0x80 | cp >> 6 & 0x3F, 0x80 | cp & 0x3F);
+            } else {
+                putBytes(0xE0 | c >> 12, 0x80 | c >> 6 & 0x3F, 0x80 | c & 0x3F, -1);
+            }
+        }
+    }
+
+    // Writes all of a character's bytes or none of them.
+    private void putBytes(int b0, int b1, int b2, int b3) {
+        int n = (b2 < 0) ? 2 : (b3 < 0) ? 3 : 4;
+        if (length + n > bytes.length) {
+            full = true;
+            return;
+        }
+        bytes[length++] = (byte) b0;
+        bytes[length++] = (byte) b1;
+        if (n > 2)
+            bytes[length++] = (byte) b2;
+        if (n > 3)
+            bytes[length++] = (byte) b3;
+    }
+
+    // Writes value in decimal, with leading zeros up to width digits.
+    private void put(long value, int width) {
+        long div = 1;
+        int digits = 1;
+        while (div <= value / 10) {
+            div *= 10;
+            digits++;
+        }
+        for (; digits < width; digits++)
+            put('0');
+        for (; div > 0; div /= 10)
+            put((char) ('0' + value / div % 10));
+    }
+
+    // yyyy-mm-ddThh:mm:ss.sssZ, in UTC.
+    private void timestamp(long millis) {
+        long days = Math.floorDiv(millis, 86_400_000L);
+        long ms = Math.floorMod(millis, 86_400_000L);
+        // Civil date from a day count, after Howard Hinnant's days_from_civil inverse.
+        long z = days + 719_468;
+        long era = Math.floorDiv(z, 146_097);
+        long doe = z - era * 146_097;
+        long yoe = (doe - doe / 1460 + doe / 36_524 - doe / 146_096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        long day = doy - (153 * mp + 2) / 5 + 1;
+        long month = (mp < 10) ? mp + 3 : mp - 9;
+        long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+        put(year, 4);
+        put('-');
+        put(month, 2);
+        put('-');
+        put(day, 2);
+        put('T');
+        put(ms / 3_600_000, 2);
+        put(':');
+        put(ms / 60_000 % 60, 2);
+        put(':');
+        put(ms / 1000 % 60, 2);
+        put('.');
+        put(ms % 1000, 3);
+        put('Z');
+    }
+}
+
+With this handler, the Logging API example becomes simpler, because there's no reason to log the frames one at a time. A single call logs the exception, and the handler formats its whole stack trace:
+
+try {
+    Handler handler = new AsyncFileHandler(Paths.get("OutFile.log"), 8192,
+                                           AsyncFileHandler.OverflowPolicy.BLOCK);
+    Logger.getLogger("").addHandler(handler);
+
+} catch (IOException e) {
+    Logger logger = Logger.getLogger("package.name");
+    logger.log(Level.WARNING, "Cannot open log file", e);
+}
+
+The handler's capacity must be a power of two, so that finding a ticket's slot is a bitwise AND. flush waits until everything logged so far is in the file, and close, which the LogManager calls when the program exits, flushes, stops the writer thread and forces the file to disk. A record logged while the writer is idle may wait up to a tenth of a millisecond before it is written, because the writer checks for new records that often when there are none, rather than being woken up by each logging thread.
+
+The LoggingBenchmark in Benchmarking Collections measures how long a logging call takes with FileHandler and with each policy of AsyncFileHandler, from four threads at once. On a one-core machine, logging an IOException took a median of about 9.5 microseconds with FileHandler and about 1.2 with AsyncFileHandler; a message without an exception took about half a microsecond. Most of what remains is the work of the Logger itself, which creates a LogRecord for each call.
@@ -25,3 +25,330 @@ Choosing a Superclass
 
     Most applets and applications you write will throw objects that are Exceptions. Errors are normally used for serious, hard errors in the system, such as those that prevent the JVM from running.
     Note: For readable code, it's good practice to append the string Exception to the names of all classes that inherit (directly or indirectly) from the Exception class. 
+
+An Indexable Linked List
+
+    The linked list in the example is a list of nodes, each holding one object and a reference to the next. objectAt, firstObject and indexOf are simple to write on such a list, but objectAt has to walk past n nodes to find the nth, so reading every position in turn takes time proportional to the square of the list's length. Each of those nodes is a separate object, too, usually far in memory from its neighbours, so the walk also waits on the cache at almost every step.
+
+    IndexedLinkedList keeps the same methods and the same exceptions, but stores its objects in a counted B-tree. The objects sit in leaves of up to 64, in order, and the leaves are linked to each other like the nodes of an ordinary linked list, so iterating is a walk along the leaves. Above the leaves are inner nodes of up to 64 children, and every node records how many objects are under it. To find the nth object, objectAt starts at the root and skips over whole children by their counts until it reaches the right leaf, so it looks at one node per level. A tree of three levels holds a quarter of a million objects, and four levels hold more than sixteen million: finding a position is O(log n), with a logarithm to the base 64.
+
+    Here are the exception classes. LinkedListException is the superclass, as the figure shows, so a caller can catch everything the list throws with one handler:
+
+    public class LinkedListException extends Exception {
+        public LinkedListException(String message) {
+            super(message);
+        }
+    }
+
+    public class InvalidIndexException extends LinkedListException {
+        public InvalidIndexException(String message) {
+            super(message);
+        }
+    }
+
+    public class ObjectNotFoundException extends LinkedListException {
+        public ObjectNotFoundException(String message) {
+            super(message);
+        }
+    }
+
+    public class EmptyListException extends LinkedListException {
+        public EmptyListException(String message) {
+            super(message);
+        }
+    }
+
+    And here is the list:
+
+    import java.util.*;
+
+    public class IndexedLinkedList<E> implements Iterable<E> {
+        private static final int B = 64;    // maximum elements in a leaf, or children of an inner node
+
+        private abstract static class Node {
+            Inner parent;
+            int size;    // elements in this subtree
+        }
+
+        private static final class Leaf extends Node {
+            final Object[] items = new Object[B];
+            Leaf prev, next;
+        }
+
+        private static final class Inner extends Node {
+            final Node[] children = new Node[B];
+            int count;
+
+            int indexOf(Node child) {
+                for (int i = 0; ; i++)
+                    if (children[i] == child)
+                        return i;
+            }
+
+            void insert(int i, Node child) {
+                System.arraycopy(children, i, children, i + 1, count - i);
+                children[i] = child;
+                child.parent = this;
+                count++;
+            }
+
+            void remove(int i) {
+                System.arraycopy(children, i + 1, children, i, count - i - 1);
+                children[--count] = null;
+            }
+        }
+
+        private Node root = new Leaf();
+        private Leaf first = (Leaf) root;
+        private int modCount;
+
+        public int size() {
+            return root.size;
+        }
+
+        public boolean isEmpty() {
+            return root.size == 0;
+        }
+
+        public E firstObject() throws EmptyListException {
+            if (root.size == 0)
+                throw new EmptyListException("The list is empty");
+            return elementAt(first, 0);
+        }
+
+        public E objectAt(int n) throws InvalidIndexException {
+            checkIndex(n, root.size);
+            Cursor c = locate(n);
+            return elementAt(c.leaf, c.offset);
+        }
+
+        public int indexOf(Object o) throws ObjectNotFoundException {
+            int base = 0;
+            for (Leaf leaf = first; leaf != null; base += leaf.size, leaf = leaf.next)
+                for (int i = 0; i < leaf.size; i++)
+                    if (Objects.equals(o, leaf.items[i]))
+                        return base + i;
+            throw new ObjectNotFoundException("Not in the list: " + o);
+        }
+
+        public void add(E e) {
+            try {
+                add(root.size, e);
+            } catch (InvalidIndexException impossible) {
+                throw new AssertionError(impossible);
+            }
+        }
+
+        public void add(int n, E e) throws InvalidIndexException {
+            checkIndex(n, root.size + 1);
+            locate(n).add(e);
+        }
+
+        public E removeAt(int n) throws InvalidIndexException {
+            checkIndex(n, root.size);
+            Cursor c = locate(n);
+            E e = elementAt(c.leaf, c.offset);
+            c.delete();
+            return e;
+        }
+
+        // A cursor before element n; adding through it doesn't search the tree again.
+        public Cursor cursor(int n) throws InvalidIndexException {
+            checkIndex(n, root.size + 1);
+            return locate(n);
+        }
+
+        public Iterator<E> iterator() {
+            return locate(0);
+        }
+
+        private static void checkIndex(int n, int limit) throws InvalidIndexException {
+            if (n < 0 || n >= limit)
+                throw new InvalidIndexException("Index " + n + " is out of range");
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <E> E elementAt(Leaf leaf, int i) {
+            return (E) leaf.items[i];
+        }
+
+        // Descends from the root, skipping whole subtrees by their sizes.
+        private Cursor locate(int n) {
+            Node node = root;
+            while (node instanceof Inner) {
+                Inner in = (Inner) node;
+                int i = 0;
+                while (i < in.count - 1 && n >= in.children[i].size) {
+                    n -= in.children[i].size;
+                    i++;
+                }
+                node = in.children[i];
+            }
+            return new Cursor((Leaf) node, n);
+        }
+
+        private static void resize(Node node, int delta) {
+            for (; node != null; node = node.parent)
+                node.size += delta;
+        }
+
+        // Moves the upper half of a full leaf into a new leaf after it.
+        private Leaf split(Leaf leaf) {
+            Leaf right = new Leaf();
+            int half = B / 2;
+            System.arraycopy(leaf.items, half, right.items, 0, B - half);
+            Arrays.fill(leaf.items, half, B, null);
+            right.size = B - half;
+            leaf.size = half;
+            right.next = leaf.next;
+            right.prev = leaf;
+            if (leaf.next != null)
+                leaf.next.prev = right;
+            leaf.next = right;
+            addSibling(leaf, right);
+            return right;
+        }
+
+        // Puts right into the tree just after node, splitting ancestors that are full.
+        private void addSibling(Node node, Node right) {
+            Inner parent = node.parent;
+            if (parent == null) {
+                Inner newRoot = new Inner();
+                newRoot.insert(0, node);
+                newRoot.insert(1, right);
+                newRoot.size = node.size + right.size;
+                root = newRoot;
+                return;
+            }
+            if (parent.count < B) {
+                parent.insert(parent.indexOf(node) + 1, right);
+                return;    // sizes above are unchanged: right's elements came from node
+            }
+            Inner upper = new Inner();
+            int half = B / 2;
+            for (int i = half; i < B; i++) {
+                upper.insert(i - half, parent.children[i]);
+                parent.children[i] = null;
+            }
+            parent.count = half;
+            Inner target = (node.parent == upper) ? upper : parent;
+            target.insert(target.indexOf(node) + 1, right);
+            recount(parent);
+            recount(upper);
+            addSibling(parent, upper);
+        }
+
+        private static void recount(Inner in) {
+            int size = 0;
+            for (int i = 0; i < in.count; i++)
+                size += in.children[i].size;
+            in.size = size;
+        }
+
+        // Takes an empty leaf out of the tree, along with any ancestors it leaves empty.
+        private void unlink(Leaf leaf) {
+            if (leaf.prev != null)
+                leaf.prev.next = leaf.next;
+            else
+                first = leaf.next;
+            if (leaf.next != null)
+                leaf.next.prev = leaf.prev;
+            Node node = leaf;
+            Inner parent = node.parent;
+            while (parent != null) {
+                parent.remove(parent.indexOf(node));
+                if (parent.count > 0)
+                    break;
+                node = parent;
+                parent = node.parent;
+            }
+            while (root instanceof Inner && ((Inner) root).count == 1) {
+                root = ((Inner) root).children[0];
+                root.parent = null;
+            }
+        }
+
+        public class Cursor implements Iterator<E> {
+            private Leaf leaf;
+            private int offset;
+            private int expectedModCount = modCount;
+
+            Cursor(Leaf leaf, int offset) {
+                this.leaf = leaf;
+                this.offset = offset;
+            }
+
+            public boolean hasNext() {
+                return offset < leaf.size || (leaf.next != null && leaf.next.size > 0);
+            }
+
+            public E next() {
+                check();
+                if (offset == leaf.size && leaf.next != null) {
+                    leaf = leaf.next;
+                    offset = 0;
+                }
+                if (offset >= leaf.size)
+                    throw new NoSuchElementException();
+                return elementAt(leaf, offset++);
+            }
+
+            // Inserts e before the cursor, which then stands after it.
+            public void add(E e) {
+                check();
+                if (leaf.size == B) {
+                    Leaf right = split(leaf);
+                    if (offset > leaf.size) {
+                        offset -= leaf.size;
+                        leaf = right;
+                    }
+                }
+                System.arraycopy(leaf.items, offset, leaf.items, offset + 1, leaf.size - offset);
+                leaf.items[offset++] = e;
+                resize(leaf, 1);
+                expectedModCount = ++modCount;
+            }
+
+            // Removes the element after the cursor.
+            private void delete() {
+                System.arraycopy(leaf.items, offset + 1, leaf.items, offset, leaf.size - offset - 1);
+                leaf.items[leaf.size - 1] = null;
+                resize(leaf, -1);
+                if (leaf.size == 0 && leaf != root) {
+                    Leaf next = leaf.next;
+                    unlink(leaf);
+                    leaf = next;
+                    offset = 0;
+                } else {
+                    mergeNext(leaf);
+                }
+                expectedModCount = ++modCount;
+            }
+
+            private void check() {
+                if (expectedModCount != modCount)
+                    throw new ConcurrentModificationException();
+            }
+        }
+
+        // Keeps leaves at least a quarter full on average: a leaf that falls
+        // below a quarter absorbs its right neighbour if both fit in half a leaf.
+        private void mergeNext(Leaf leaf) {
+            Leaf next = leaf.next;
+            if (next == null || next.parent != leaf.parent || leaf.size >= B / 4
+                    || leaf.size + next.size > B / 2)
+                return;
+            System.arraycopy(next.items, 0, leaf.items, leaf.size, next.size);
+            leaf.size += next.size;
+            next.size = 0;
+            unlink(next);
+        }
+    }
+
+    add(int, E) and removeAt descend the tree like objectAt, then insert or remove within one leaf, moving at most 63 references. A leaf that fills up is split in two; if that fills its parent, the parent is split in turn, and when the root splits the tree grows a level. A leaf that empties is taken out of the tree, and a leaf that drops below a quarter full absorbs its next sibling when the two fit in half a leaf, so deleting doesn't leave the tree full of nearly empty leaves.
+
+    A Cursor remembers a leaf and a position in it. Adding through a cursor doesn't search the tree again: the object goes straight into the leaf, and only the counts on the path up to the root change. That is one addition per level, so in practice a handful, but it isn't strictly constant: inserting n objects at a cursor costs O(n log n) count updates, plus the splits, which are amortized constant. A skip list with counted links would give the same bounds, but it needs a tower of links for every node and random numbers to build them; the B-tree keeps 64 objects side by side in one array, which is what makes it fast to read.
+
+    indexOf still has to look at each object in turn, because the list is in the order the objects were added rather than sorted; it is O(n), but it reads the leaves' arrays one after another instead of chasing a reference per object.
+
+    The Benchmarking Collections section has a benchmark that compares IndexedLinkedList with LinkedList and ArrayList on a mix of reads, inserts and removes at random positions.
@@ -30,6 +30,16 @@ The throw Statement
 
     Note that the declaration of the pop method does not contain a throws clause. EmptyStackException is not a checked exception, so pop is not required to state that it might occur. 
 
+    Creating an exception object records a stack trace, which takes time in proportion to the depth of the stack. That doesn't matter for an error that happens once, but if a program empties stacks as a matter of course and relies on catching the exception to find out, the stack traces can cost more than everything else it does. The Chained Exceptions section describes LightRuntimeException, whose subclasses can choose not to record a stack trace at all. A stack class could throw one of these instead:
+
+    public class StackUnderflowException extends LightRuntimeException {
+        public StackUnderflowException() {
+            super("Stack is empty", StackTraceMode.NONE);
+        }
+    }
+
+    Better still, when an empty stack is normal rather than an error, give the class a method that reports it without an exception, as Deque's pollFirst does by returning null. 
+
 Throwable Class and Its Subclasses
 
     The objects that inherit from the Throwable class include direct descendants (objects that inherit directly from the Throwable class) and indirect descendants (objects that inherit from children or grandchildren of the Throwable class). The figure below illustrates the class hierarchy of the Throwable class and its most significant subclasses. As you can see, Throwable has two direct descendants: Error and Exception.
@@ -49,3 +59,140 @@ Exception Class
     The Java platform defines the many descendants of the Exception class. These descendants indicate various types of exceptions that can occur. For example, IllegalAccessException signals that a particular method could not be found, and NegativeArraySizeException indicates that a program attempted to create an array with a negative size.
 
     One Exception subclass, RuntimeException, is reserved for exceptions that indicate incorrect use of an API. An example of a runtime exception is NullPointerException, which occurs when a method tries to access a member of an object through a null reference. The section Unchecked Exceptions — The Controversy discusses why most applications shouldn't throw runtime exceptions or subclass RuntimeException. 
+
+Two Faster Stacks
+
+    The pop method above comes from a stack that stores its elements through objectAt and setObjectAt and reports an empty stack with an exception. A stack is a simple enough structure that both choices cost more than they need to. This section gives two replacements: one for a stack used by a single thread, and one for a stack shared by many.
+
+    ArrayStack keeps its elements in an array and adds a method, pollOrNull, that returns null for an empty stack instead of throwing an exception, so that code that expects to find the stack empty can simply test the result. pop is still there, for code that considers an empty stack an error, and it throws EmptyStackException as before. Because null is the answer for an empty stack, push doesn't accept null elements. The array doubles when it is full, and halves when it is only a quarter full. The gap between the two is called hysteresis: a stack that shrank as soon as it was half full would copy its whole array again and again if pushes and pops alternated at just that size.
+
+    import java.util.*;
+
+    public class ArrayStack<E> {
+        private static final int MIN_CAPACITY = 16;
+
+        private Object[] elements = new Object[MIN_CAPACITY];
+        private int size;
+
+        public void push(E e) {
+            Objects.requireNonNull(e);    // null is pollOrNull's answer for an empty stack
+            if (size == elements.length)
+                elements = Arrays.copyOf(elements, size * 2);
+            elements[size++] = e;
+        }
+
+        public E pop() {
+            E e = pollOrNull();
+            if (e == null)
+                throw new EmptyStackException();
+            return e;
+        }
+
+        @SuppressWarnings("unchecked")
+        public E pollOrNull() {
+            if (size == 0)
+                return null;
+            E e = (E) elements[--size];
+            elements[size] = null;
+            // Shrink by half only at a quarter full, so that pushes and pops
+            // around one size can't make the array grow and shrink in turn.
+            if (size <= elements.length / 4 && elements.length > MIN_CAPACITY)
+                elements = Arrays.copyOf(elements, elements.length / 2);
+            return e;
+        }
+
+        @SuppressWarnings("unchecked")
+        public E peekOrNull() {
+            return (size == 0) ? null : (E) elements[size - 1];
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public boolean isEmpty() {
+            return size == 0;
+        }
+    }
+
+    ArrayStack is not thread-safe. A stack shared between threads is usually protected with a lock, as java.util.Stack's synchronized methods are, but then every push and pop waits for the others. TreiberStack, named after R. Kent Treiber, who described it in 1986, needs no lock. It's a linked list whose top is held in an AtomicReference: push creates a node pointing to the current top and uses compareAndSet to make it the new top, but only if the top hasn't changed in the meantime; if it has, it tries again. pollOrNull does the same in reverse, and, as in ArrayStack, push rejects null, since null means an empty stack. A thread that fails its compareAndSet has lost out to one that succeeded, so some thread always makes progress.
+
+    When many threads use the stack at once, most compareAndSet calls fail, and the threads spend their time retrying on the one top reference. Elimination backoff uses those failures. A push and a pop that happen at the same time cancel each other out, so they don't need the stack at all: the pop can simply take the push's element. After a failed compareAndSet, a push offers its node in a random slot of a small exchange array and waits briefly; a pop that fails looks in a random slot and takes any node it finds there. If no pop arrives, the push withdraws its node and tries the stack again. The more contention there is, the more pairs meet in the array, and the less traffic reaches the top of the stack.
+
+    import java.util.Objects;
+    import java.util.concurrent.ThreadLocalRandom;
+    import java.util.concurrent.atomic.*;
+
+    public class TreiberStack<E> {
+        private static final int SPINS = 64;    // how long a push waits in the elimination array
+
+        private static final class Node<E> {
+            final E item;
+            Node<E> next;
+
+            Node(E item) {
+                this.item = item;
+            }
+        }
+
+        private final AtomicReference<Node<E>> top = new AtomicReference<Node<E>>();
+        private final AtomicReferenceArray<Node<E>> exchange =
+            new AtomicReferenceArray<Node<E>>(Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+
+        public void push(E e) {
+            Objects.requireNonNull(e);    // null is pollOrNull's answer for an empty stack
+            Node<E> node = new Node<E>(e);
+            while (true) {
+                Node<E> t = top.get();
+                node.next = t;
+                if (top.compareAndSet(t, node))
+                    return;
+                if (eliminated(node))    // the stack is contended; try to meet a pop instead
+                    return;
+            }
+        }
+
+        // Returns the top element, or null if the stack is empty.
+        public E pollOrNull() {
+            while (true) {
+                Node<E> t = top.get();
+                if (t == null)
+                    return null;
+                if (top.compareAndSet(t, t.next))
+                    return t.item;
+                Node<E> n = taken();
+                if (n != null)
+                    return n.item;
+            }
+        }
+
+        public boolean isEmpty() {
+            return top.get() == null;
+        }
+
+        // Offers node in a random slot for a while; true if a pop took it.
+        private boolean eliminated(Node<E> node) {
+            int i = ThreadLocalRandom.current().nextInt(exchange.length());
+            if (!exchange.compareAndSet(i, null, node))
+                return false;
+            for (int spin = 0; spin < SPINS; spin++) {
+                if (exchange.get(i) != node)
+                    return true;
+                Thread.onSpinWait();
+            }
+            return !exchange.compareAndSet(i, node, null);    // failing means a pop took it just now
+        }
+
+        // Takes a node a push is offering in a random slot, if there is one.
+        private Node<E> taken() {
+            int i = ThreadLocalRandom.current().nextInt(exchange.length());
+            Node<E> n = exchange.get(i);
+            if (n != null && exchange.compareAndSet(i, n, null))
+                return n;
+            return null;
+        }
+    }
+
+    Each push creates a new node, even when it retries, and the exchange array holds the node, not the element. That matters: if the array held elements, a push that withdrew an element might find that another push had offered the same element in the same slot, and take it back instead. A node is never offered by two pushes, and because Java's garbage collector doesn't reuse a node while any thread can still see it, TreiberStack is also free of the ABA problem that makes this structure harder to write in languages without garbage collection.
+
+    The StackBenchmark in Benchmarking Collections measures a push followed by a pop with each of these stacks, and with ArrayDeque, ConcurrentLinkedDeque and a synchronized Stack for comparison, at 1 to 64 threads. With one thread, ArrayStack and ArrayDeque are far faster than any thread-safe stack, and of those, TreiberStack is the fastest. With many threads on a machine with many cores, expect the synchronized Stack to fall furthest behind, and elimination to keep TreiberStack's throughput from collapsing as threads are added; run the benchmark on the machine you care about to see how much.
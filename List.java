@@ -123,6 +123,133 @@ Positional Access and Search Operations
         }
     }
 
+Shuffling Large Lists
+
+    The shuffle algorithm shown earlier is fair and fast for an ArrayList, but look at what it does to a LinkedList. Every call to swap performs two gets and two sets, and on a LinkedList each of those walks the list from the nearer end to the requested position. The list.size()-1 swaps therefore cost time proportional to the square of the list's size. Shuffling a list of a million elements this way takes hours.
+
+    The cure is to notice which lists support fast positional access. ArrayList and Vector implement the RandomAccess marker interface, and LinkedList does not. For any other list, the following version dumps the elements into an array, shuffles the array, and then writes the elements back with a single pass of a ListIterator. Each of the three steps is linear, no matter how the list is implemented. Very short lists are shuffled in place, because for them the copy costs more than it saves.
+
+    private static final int SHUFFLE_THRESHOLD = 5;
+
+    public static void shuffle(List<?> list, Random rnd) {
+        int size = list.size();
+        if (size < SHUFFLE_THRESHOLD || list instanceof RandomAccess) {
+            for (int i = size; i > 1; i--)
+                swap(list, i - 1, rnd.nextInt(i));
+        } else {
+            Object[] a = list.toArray();
+            for (int i = size; i > 1; i--)
+                swap(a, i - 1, rnd.nextInt(i));
+            writeBack(list, a);
+        }
+    }
+
+    private static void swap(Object[] a, int i, int j) {
+        Object tmp = a[i];
+        a[i] = a[j];
+        a[j] = tmp;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E> void writeBack(List<E> list, Object[] a) {
+        ListIterator<E> it = list.listIterator();
+        for (Object e : a) {
+            it.next();
+            it.set((E) e);
+        }
+    }
+
+    This is, in fact, how Collections.shuffle is implemented. Note that the writeBack method uses set rather than add. It replaces the list's elements without changing its size, so it works for any list that supports set, including the fixed-size lists returned by Arrays.asList.
+
+    Once the elements are in an array, there is a second opportunity. A Fisher-Yates shuffle is inherently sequential, because each swap depends on the ones before it, so a list of tens of millions of elements is shuffled by one core while the rest of the machine sits idle. The following methods shuffle an array of more than a few million elements in parallel. They work in three passes:
+
+        Scatter: the array is divided into a fixed number of chunks, and every element is sent to a randomly chosen bucket. The chunks are processed in parallel. Each chunk first counts how many of its elements go to each bucket, and the counts tell every chunk exactly where in a temporary array to write its share of every bucket.
+        Shuffle: each bucket, now a contiguous range of the temporary array, is shuffled on its own with an ordinary Fisher-Yates shuffle. The buckets are processed in parallel.
+        Copy: each shuffled bucket is copied back to the same range of the original array. 
+
+    Because every element lands in a uniformly chosen bucket and every bucket is then uniformly permuted, all permutations remain equally likely. The parallel shuffle is exactly as fair as the sequential one.
+
+    The random numbers come from SplittableRandom rather than Random, because Random synchronizes on every call and can't be shared cheaply by several threads. Each chunk and each bucket gets its own generator, seeded from a master generator before any parallel work begins. The number of chunks and buckets is fixed rather than derived from the number of processors, so the result depends only on the seed and on the size of the array. Shuffling the same list with the same seed gives the same permutation on any machine, with any number of threads. That's what you want when a shuffled data set has to be reproduced later.
+
+    private static final int PARALLEL_SHUFFLE_THRESHOLD = 1 << 22;
+    private static final int SHUFFLE_CHUNKS = 64;
+    private static final int SHUFFLE_BUCKETS = 256;
+
+    public static void shuffle(List<?> list, long seed) {
+        Object[] a = list.toArray();
+        shuffle(a, seed);
+        writeBack(list, a);
+    }
+
+    public static void shuffle(Object[] a, long seed) {
+        if (a.length < PARALLEL_SHUFFLE_THRESHOLD)
+            shuffle(a, 0, a.length, new SplittableRandom(seed));
+        else
+            parallelShuffle(a, seed);
+    }
+
+    private static void shuffle(Object[] a, int from, int to,
+                                SplittableRandom rnd) {
+        for (int i = to - from; i > 1; i--)
+            swap(a, from + i - 1, from + rnd.nextInt(i));
+    }
+
+    private static void parallelShuffle(Object[] a, long seed) {
+        int n = a.length;
+        SplittableRandom master = new SplittableRandom(seed);
+        long[] chunkSeeds = new long[SHUFFLE_CHUNKS];
+        long[] bucketSeeds = new long[SHUFFLE_BUCKETS];
+        for (int c = 0; c < SHUFFLE_CHUNKS; c++)
+            chunkSeeds[c] = master.nextLong();
+        for (int b = 0; b < SHUFFLE_BUCKETS; b++)
+            bucketSeeds[b] = master.nextLong();
+
+        // Pass 1: count how many elements of each chunk go to each bucket.
+        int[][] next = new int[SHUFFLE_CHUNKS][SHUFFLE_BUCKETS];
+        IntStream.range(0, SHUFFLE_CHUNKS).parallel().forEach(c -> {
+            SplittableRandom rnd = new SplittableRandom(chunkSeeds[c]);
+            for (int i = chunkStart(c, n), end = chunkStart(c + 1, n); i < end; i++)
+                next[c][rnd.nextInt(SHUFFLE_BUCKETS)]++;
+        });
+
+        // Turn the counts into write positions: bucket by bucket, and
+        // within a bucket, chunk by chunk.
+        int[] bucketStart = new int[SHUFFLE_BUCKETS + 1];
+        int pos = 0;
+        for (int b = 0; b < SHUFFLE_BUCKETS; b++) {
+            bucketStart[b] = pos;
+            for (int c = 0; c < SHUFFLE_CHUNKS; c++) {
+                int count = next[c][b];
+                next[c][b] = pos;
+                pos += count;
+            }
+        }
+        bucketStart[SHUFFLE_BUCKETS] = n;
+
+        // Pass 2: replay the same random numbers to scatter the elements.
+        Object[] tmp = new Object[n];
+        IntStream.range(0, SHUFFLE_CHUNKS).parallel().forEach(c -> {
+            SplittableRandom rnd = new SplittableRandom(chunkSeeds[c]);
+            for (int i = chunkStart(c, n), end = chunkStart(c + 1, n); i < end; i++)
+                tmp[next[c][rnd.nextInt(SHUFFLE_BUCKETS)]++] = a[i];
+        });
+
+        // Pass 3: shuffle each bucket on its own and copy it back.
+        IntStream.range(0, SHUFFLE_BUCKETS).parallel().forEach(b -> {
+            int from = bucketStart[b], to = bucketStart[b + 1];
+            shuffle(tmp, from, to, new SplittableRandom(bucketSeeds[b]));
+            System.arraycopy(tmp, from, a, from, to - from);
+        });
+    }
+
+    private static int chunkStart(int c, int n) {
+        return (int) ((long) n * c / SHUFFLE_CHUNKS);
+    }
+
+    The count pass and the scatter pass each create a generator from the same seed for a given chunk, so the scatter pass sees the same sequence of buckets that the count pass counted. This replay costs a second round of random numbers but saves remembering the bucket of every element, which would take as much memory as the array itself.
+
+    Arrays below PARALLEL_SHUFFLE_THRESHOLD (about four million elements) are shuffled sequentially. Below that size the cost of handing work to other threads outweighs the gain. Bear in mind that the parallel and sequential paths produce different permutations from the same seed; both are reproducible, but they are not interchangeable. The ShuffleBenchmark in the Benchmarking Collections section compares both versions with the original shuffle.
+
 Iterators
 
     As you'd expect, the Iterator returned by List's iterator operation returns the elements of the list in proper sequence. List also provides a richer iterator, called a ListIterator, which allows you to traverse the list in either direction, modify the list during iteration, and obtain the current position of the iterator. The ListIterator interface follows.
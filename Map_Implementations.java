@@ -23,3 +23,116 @@ Concurrent Map Implementations
 The java.util.concurrent package contains the ConcurrentMap interface, which extends Map with atomic putIfAbsent, remove, and replace methods, and the ConcurrentHashMap implementation of that interface.
 
 ConcurrentHashMap is a highly concurrent, high-performance implementation backed up by a hash table. This implementation never blocks when performing retrievals and allows the client to select the concurrency level for updates. It is intended as a drop-in replacement for Hashtable: in addition to implementing ConcurrentMap, it supports all the legacy methods peculiar to Hashtable. Again, if you don't need the legacy operations, be careful to manipulate it with the ConcurrentMap interface. 
+
+Counting From Many Threads
+Suppose that several threads feed words into one frequency table, as in the Freq program in The Map Interface section. Wrapping a HashMap with Collections.synchronizedMap isn't enough, because get followed by put is two operations, and another thread can increment the same word in between. The whole get-then-put has to be done while holding the map's lock, so only one thread at a time can count anything, and adding threads makes the program slower, not faster.
+
+ConcurrentHashMap removes the lock from lookups, but a ConcurrentMap<String, Integer> still replaces an Integer on every increment, and every thread counting the same frequent word fights over the same entry. The solution is to store a mutable counter in the map and leave the map alone once the counter is there. The counter to use is LongAdder, from java.util.concurrent.atomic. When several threads increment a LongAdder at the same moment, it spreads their increments over separate cells instead of making them retry on one; sum adds the cells together.
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+public class ConcurrentWordCounts {
+    private final ConcurrentMap<String, LongAdder> counts =
+        new ConcurrentHashMap<String, LongAdder>();
+
+    public void increment(String word) {
+        adder(word).increment();
+    }
+
+    public void add(String word, long n) {
+        adder(word).add(n);
+    }
+
+    // get is lock-free, so only the first increment of a word pays for
+    // computeIfAbsent, which may lock a bin of the table.
+    private LongAdder adder(String word) {
+        LongAdder a = counts.get(word);
+        if (a == null)
+            a = counts.computeIfAbsent(word, k -> new LongAdder());
+        return a;
+    }
+
+    public long get(String word) {
+        LongAdder a = counts.get(word);
+        return (a == null) ? 0 : a.sum();
+    }
+
+    // A weakly consistent copy: increments made while the snapshot is
+    // being taken may or may not be reflected in it.
+    public Map<String, Long> snapshot() {
+        Map<String, Long> m = new HashMap<String, Long>();
+        for (Map.Entry<String, LongAdder> e : counts.entrySet())
+            m.put(e.getKey(), e.getValue().sum());
+        return m;
+    }
+
+    public Writer writer() {
+        return new Writer();
+    }
+
+    // Counts privately in a WordCounts table and adds its totals to the
+    // shared table on flush or close. A Writer belongs to one thread.
+    public class Writer implements AutoCloseable {
+        private static final int FLUSH_THRESHOLD = 1 << 30;
+
+        private WordCounts local = new WordCounts();
+
+        public void increment(String word) {
+            if (local.increment(word) == FLUSH_THRESHOLD)
+                flush();
+        }
+
+        public void flush() {
+            for (IntCursor<String> c = local.cursor(); c.advance(); )
+                add(c.key(), c.value());
+            local = new WordCounts();
+        }
+
+        public void close() {
+            flush();
+        }
+    }
+}
+
+The increment method never takes a lock once a word has been seen: the lookup is lock-free, and LongAdder.increment is a compare-and-set on one of the adder's cells. All the contention that remains is on the first occurrence of each word.
+
+When a thread has a lot of words to count, it can do better still by not touching the shared table at all until it is done. A Writer counts privately in a WordCounts table (see the Counting Without Boxing section of The Map Interface) and adds its totals to the shared table when it is flushed or closed. A Writer must only be used by the thread that created it; because it implements AutoCloseable, the natural way to use one is in a try-with-resources statement, so that its counts are merged even if the thread fails. A Writer also flushes itself whenever one of its private counts reaches 2^30, so that the int counts in its WordCounts table can never overflow.
+
+The two kinds of increments can be mixed freely, and the rules for reading the counts are the same for both:
+
+    snapshot and get are weakly consistent. Taken while threads are still counting, a snapshot is a reasonable live view, but it may include some increments made during the snapshot and not others, and it doesn't include anything still held in an open Writer.
+    Once every thread has finished and every Writer has been closed, the counts are exact. 
+
+Here's a version of Freq that counts its arguments with one Writer per processor.
+
+import java.util.*;
+import java.util.concurrent.*;
+
+public class ConcurrentFreq {
+    public static void main(String[] args) throws InterruptedException {
+        ConcurrentWordCounts m = new ConcurrentWordCounts();
+        int nThreads = Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+
+        // Each thread counts every nThreads-th argument
+        for (int t = 0; t < nThreads; t++) {
+            final int first = t;
+            pool.execute(() -> {
+                try (ConcurrentWordCounts.Writer w = m.writer()) {
+                    for (int i = first; i < args.length; i += nThreads)
+                        w.increment(args[i]);
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.HOURS);
+
+        Map<String, Long> counts = m.snapshot();
+        System.out.println(counts.size() + " distinct words:");
+        System.out.println(counts);
+    }
+}
+
+The ConcurrentFreqBenchmark in the Benchmarking Collections section compares the synchronized HashMap, the shared adders and the per-thread writers as the number of threads grows.
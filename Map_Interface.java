@@ -88,6 +88,305 @@ Map Interface Basic Operations
 
     Map<K, V> copy = new HashMap<K, V>(m);
 
+Counting Without Boxing
+
+    The Freq program is a fine illustration of the basic operations, but it does more work than it appears to. Every word costs two hash lookups, one for get and one for put, and every count after the first is a new Integer object, because Integer is immutable and freq + 1 has to be boxed before it can be stored. (Integer caches the values from -128 to 127, so small counts are free; frequent words quickly pass 127.) On a few hundred million tokens, the program spends most of its time hashing each word twice and most of its memory on Integer objects that are garbage a moment later.
+
+    A special-purpose table avoids both costs. WordCounts stores its words and their counts in two parallel arrays, an open-addressing layout just like the LongMap in the Anagram Signatures section. Its increment method finds a word's slot once and adds one to the int in that slot; if the word isn't there, the probe has already found the free slot where it belongs.
+
+    public class WordCounts {
+        private String[] keys;
+        private int[] counts;
+        private int size;
+
+        public WordCounts() {
+            keys = new String[16];
+            counts = new int[16];
+        }
+
+        // Adds one to the count for word and returns the new count.
+        public int increment(String word) {
+            int mask = keys.length - 1;
+            int i = hash(word) & mask;
+            for (String k; (k = keys[i]) != null; i = (i + 1) & mask)
+                if (k.equals(word))
+                    return ++counts[i];
+            keys[i] = word;
+            counts[i] = 1;
+            if (++size > keys.length / 2)
+                resize();
+            return 1;
+        }
+
+        public int get(String word) {
+            int mask = keys.length - 1;
+            for (int i = hash(word) & mask; keys[i] != null; i = (i + 1) & mask)
+                if (keys[i].equals(word))
+                    return counts[i];
+            return 0;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        // Visits every word and its count. The same cursor object is used for
+        // every entry, so iterating allocates nothing beyond the cursor.
+        public IntCursor<String> cursor() {
+            return new IntCursor<String>() {
+                private int i = -1;
+
+                public boolean advance() {
+                    while (++i < keys.length)
+                        if (keys[i] != null)
+                            return true;
+                    return false;
+                }
+
+                public String key() {
+                    return keys[i];
+                }
+
+                public int value() {
+                    return counts[i];
+                }
+            };
+        }
+
+        public String toString() {
+            StringBuilder sb = new StringBuilder("{");
+            for (IntCursor<String> c = cursor(); c.advance(); ) {
+                if (sb.length() > 1)
+                    sb.append(", ");
+                sb.append(c.key()).append('=').append(c.value());
+            }
+            return sb.append('}').toString();
+        }
+
+        private void resize() {
+            String[] oldKeys = keys;
+            int[] oldCounts = counts;
+            keys = new String[oldKeys.length * 2];
+            counts = new int[oldCounts.length * 2];
+            int mask = keys.length - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldKeys[j] != null) {
+                    int i = hash(oldKeys[j]) & mask;
+                    while (keys[i] != null)
+                        i = (i + 1) & mask;
+                    keys[i] = oldKeys[j];
+                    counts[i] = oldCounts[j];
+                }
+            }
+        }
+
+        // String.hashCode is cached, but its low bits are poorly distributed
+        // for short words, so mix them before masking.
+        private static int hash(String word) {
+            int h = word.hashCode() * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+
+    WordCounts doesn't implement Map, because a Map would have to return its counts as Integer objects and its entries as Map.Entry objects, which is exactly the cost we're trying to avoid. Instead, it offers a cursor. A cursor is like an iterator that stays on the current entry: advance moves to the next entry and returns false when there are none left, and key and value return the current entry's word and count.
+
+    public interface IntCursor<K> {
+        boolean advance();
+        K key();
+        int value();
+    }
+
+    Here's the idiom for iterating over the counts.
+
+    for (IntCursor<String> c = counts.cursor(); c.advance(); )
+        System.out.println(c.key() + ": " + c.value());
+
+    Switching the Freq program over takes two lines.
+
+    import java.util.*;
+
+    public class Freq {
+        public static void main(String[] args) {
+            WordCounts m = new WordCounts();
+
+            // Initialize frequency table from command line
+            for (String a : args)
+                m.increment(a);
+
+            System.out.println(m.size() + " distinct words:");
+            System.out.println(m);
+        }
+    }
+
+    The output is the same as before, except for the order of the words, which, as with HashMap, is unspecified.
+
+    8 distinct words:
+    {if=1, is=2, be=1, me=1, it=2, to=3, up=1, delegate=1}
+
+    What you give up is the flexibility described earlier: you can no longer get alphabetical or first-appearance order by changing HashMap to TreeMap or LinkedHashMap. If you need a sorted table, count with WordCounts and copy the result into a TreeMap at the end; the copy costs one Integer per distinct word rather than one per token. The FreqBenchmark in the Benchmarking Collections section compares the two versions on a hundred million tokens.
+
+Finding the Most Frequent Words
+
+    Both Freq and its WordCounts version remember every distinct word they have seen. That's unavoidable if you want the whole table, but often all you want is the handful of most frequent words in a stream that never ends, or that has hundreds of millions of distinct words. For that question there is an algorithm that uses a fixed amount of memory and gives answers with a known error: the Space-Saving algorithm of Metwally, Agrawal and El Abbadi.
+
+    Space-Saving keeps exactly k counters. While there are free counters, it counts exactly as Freq does. When a word arrives that has no counter and every counter is taken, it takes the counter with the smallest count, gives it to the new word, and adds one. The new word inherits the old word's count, so its count is an overestimate; the amount inherited is remembered as the counter's error. The guarantees that follow are simple:
+
+        If n words have been seen, no count is more than n/k too high, and each counter's error field gives a tighter bound for that word.
+        Any word that has occurred more than n/k times is guaranteed to have a counter. 
+
+    For the heavy hitters in a skewed stream, such as the words of natural language, whose counts are far above n/k, the counts are very nearly exact. Finding the smallest count quickly is the job of a heap, so TopWords keeps its counters in an array-based min-heap ordered by count, with a HashMap from each word to its counter. Each counter remembers its position in the heap, so that incrementing an existing word can restore the heap order from that position in O(log k) time.
+
+    import java.util.*;
+
+    public class TopWords {
+        public static final class Counter {
+            private String word;
+            private long count;
+            private long error;
+            private int heapIndex;
+
+            public String word() {
+                return word;
+            }
+
+            public long count() {
+                return count;
+            }
+
+            public long error() {
+                return error;
+            }
+
+            public String toString() {
+                return word + "=" + count;
+            }
+        }
+
+        private final Map<String, Counter> index;
+        private final Counter[] heap;   // min-heap ordered by count
+        private int size;
+        private long total;
+
+        public TopWords(int capacity) {
+            if (capacity < 1)
+                throw new IllegalArgumentException("capacity: " + capacity);
+            heap = new Counter[capacity];
+            index = new HashMap<String, Counter>(capacity * 2);
+        }
+
+        public void offer(String word) {
+            total++;
+            Counter c = index.get(word);
+            if (c != null) {
+                c.count++;
+            } else if (size < heap.length) {
+                c = new Counter();
+                c.word = word;
+                c.count = 1;
+                c.heapIndex = size;
+                heap[size++] = c;
+                index.put(word, c);
+                siftUp(c.heapIndex);
+                return;
+            } else {
+                // Evict the word with the smallest count. The newcomer inherits
+                // that count, which bounds how often it can have been seen.
+                c = heap[0];
+                index.remove(c.word);
+                c.word = word;
+                c.error = c.count;
+                c.count++;
+                index.put(word, c);
+            }
+            siftDown(c.heapIndex);
+        }
+
+        // Returns up to n words, most frequent first.
+        public List<Counter> top(int n) {
+            List<Counter> result =
+                new ArrayList<Counter>(Arrays.asList(heap).subList(0, size));
+            Collections.sort(result, new Comparator<Counter>() {
+                public int compare(Counter c1, Counter c2) {
+                    return Long.compare(c2.count, c1.count);
+                }});
+            return result.subList(0, Math.min(n, result.size()));
+        }
+
+        // No word outside the table has been seen more than this many times,
+        // and no count in the table is more than this much too high.
+        public long errorBound() {
+            return size < heap.length ? 0 : total / heap.length;
+        }
+
+        public long total() {
+            return total;
+        }
+
+        private void siftUp(int i) {
+            Counter c = heap[i];
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (heap[parent].count <= c.count)
+                    break;
+                place(heap[parent], i);
+                i = parent;
+            }
+            place(c, i);
+        }
+
+        private void siftDown(int i) {
+            Counter c = heap[i];
+            for (int child; (child = 2 * i + 1) < size; i = child) {
+                if (child + 1 < size && heap[child + 1].count < heap[child].count)
+                    child++;
+                if (c.count <= heap[child].count)
+                    break;
+                place(heap[child], i);
+            }
+            place(c, i);
+        }
+
+        private void place(Counter c, int i) {
+            heap[i] = c;
+            c.heapIndex = i;
+        }
+    }
+
+    Counters are never discarded; an evicted counter is simply relabeled with the new word. After the table fills up, offer allocates nothing except the HashMap entry for the new word, and memory stays fixed at k counters however long the stream runs. The top method can be called at any time, and errorBound tells you how far to trust the answer. It returns zero while the table still has free counters, because until then every count is exact.
+
+    The following program reads words from its standard input and prints the k most frequent.
+
+    import java.util.*;
+
+    public class TopFreq {
+        public static void main(String[] args) {
+            int k = Integer.parseInt(args[0]);
+            TopWords top = new TopWords(k);
+
+            Scanner s = new Scanner(System.in);
+            while (s.hasNext())
+                top.offer(s.next());
+
+            System.out.println(top.total() + " words, counts accurate to within "
+                               + top.errorBound() + ":");
+            System.out.println(top.top(k));
+        }
+    }
+
+    With room for twenty words, the familiar sentence is counted exactly.
+
+    % echo if it is to be it is up to me to delegate | java TopFreq 20
+    12 words, counts accurate to within 0:
+    [to=3, is=2, it=2, if=1, be=1, up=1, delegate=1, me=1]
+
+    With room for only three, the answer is useless, and errorBound says so.
+
+    % echo if it is to be it is up to me to delegate | java TopFreq 3
+    12 words, counts accurate to within 4:
+    [delegate=4, me=4, to=4]
+
+    In practice, make k several times larger than the number of words you want to report, and report only the words whose count minus error is above the bound.
+
 Map Interface Bulk Operations
 
     The clear operation does exactly what you would think it could do: It removes all the mappings from the Map. The putAll operation is the Map analogue of the Collection interface's addAll operation. In addition to its obvious use of dumping one Map into another, it has a second, more subtle use. Suppose a Map is used to represent a collection of attribute-value pairs; the putAll operation, in combination with the Map conversion constructor, provides a neat way to implement attribute map creation with default values. The following is a static factory method that demonstrates this technique.
@@ -285,3 +584,370 @@ Multimaps
          traces]
 
     Many of these words seem a bit bogus, but that's not the program's fault; they're in the dictionary file. Here's the dictionary file we used. It was derived from the Public Domain ENABLE benchmark reference word list. 
+
+Anagram Signatures
+
+    Look again at the alphabetize method. Every word in the dictionary gets its own char array and its own String, and both become garbage as soon as the map lookup is done; the only keys that survive are the ones that start a new group. For a large dictionary, that is nearly all of the program's garbage. What the map really needs is not the alphabetized word itself but some value that is the same for any two anagrams and different for any two words that aren't anagrams.
+
+    Here's a classic trick that provides just such a value. Assign a different prime number to each letter of the alphabet, and multiply together the primes for the letters in the word. Multiplication is commutative, so the order of the letters doesn't matter, and every whole number has exactly one factorization into primes, so two words get the same product only if they contain the same letters the same number of times. The product, which we'll call the word's signature, is a long. Computing it allocates nothing.
+
+    A long has room for products of about fifteen letters, so the trick needs a safety net. The signature method returns zero, which is never a valid product, if the word contains any character other than a to z, or if the next multiplication would overflow. Those words fall back to the alphabetized String key, exactly as before. Nothing is ever put in the wrong group; a word either gets an exact signature or none at all.
+
+    A Map<Long, List<String>> would just trade one allocation (the String) for another (the Long). Instead, the signatures go into a small map whose keys are primitive longs. It is an open-addressing hash table: keys and values live in two parallel arrays, a key is placed in the first free slot at or after its hash position, and zero marks an empty slot. That's why the signature of a word can never be zero.
+
+    import java.util.*;
+
+    public class LongMap<V> {
+        private static final long EMPTY = 0L;
+
+        private long[] keys;
+        private Object[] values;
+        private int size;
+
+        public LongMap() {
+            keys = new long[16];
+            values = new Object[16];
+        }
+
+        @SuppressWarnings("unchecked")
+        public V get(long key) {
+            checkKey(key);
+            int mask = keys.length - 1;
+            for (int i = hash(key) & mask; keys[i] != EMPTY; i = (i + 1) & mask)
+                if (keys[i] == key)
+                    return (V) values[i];
+            return null;
+        }
+
+        @SuppressWarnings("unchecked")
+        public V put(long key, V value) {
+            checkKey(key);
+            int mask = keys.length - 1;
+            int i = hash(key) & mask;
+            for (; keys[i] != EMPTY; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    V oldValue = (V) values[i];
+                    values[i] = value;
+                    return oldValue;
+                }
+            }
+            keys[i] = key;
+            values[i] = value;
+            if (++size > keys.length / 2)
+                resize();
+            return null;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            Object[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new Object[oldValues.length * 2];
+            int mask = keys.length - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldKeys[j] != EMPTY) {
+                    int i = hash(oldKeys[j]) & mask;
+                    while (keys[i] != EMPTY)
+                        i = (i + 1) & mask;
+                    keys[i] = oldKeys[j];
+                    values[i] = oldValues[j];
+                }
+            }
+        }
+
+        private static void checkKey(long key) {
+            if (key == EMPTY)
+                throw new IllegalArgumentException("key 0 is reserved");
+        }
+
+        // Spread the bits of the key, so that keys that differ only in their
+        // high bits don't all land in the same slot.
+        private static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+
+    The revised program keeps the shape of the original. The two maps play the role of the original simulated multimap, one for words with signatures and one for the rest.
+
+    import java.util.*;
+    import java.io.*;
+
+    public class Anagrams {
+        public static void main(String[] args) {
+            int minGroupSize = Integer.parseInt(args[1]);
+
+            // Read words from file and group them by signature
+            Map<String, List<String>> m = null;
+            try {
+                m = group(new Scanner(new File(args[0])));
+            } catch (IOException e) {
+                System.err.println(e);
+                System.exit(1);
+            }
+
+            // Print all permutation groups above size threshold
+            for (List<String> l : m.values())
+                if (l.size() >= minGroupSize)
+                    System.out.println(l.size() + ": " + l);
+        }
+
+        // One prime per letter, a through z.
+        private static final long[] PRIMES = {
+            2, 3, 5, 7, 11, 13, 17, 19, 23, 29, 31, 37, 41,
+            43, 47, 53, 59, 61, 67, 71, 73, 79, 83, 89, 97, 101 };
+
+        static Map<String, List<String>> group(Iterator<String> words) {
+            // Rebuild the map the original program built, adding the keys
+            // in the same order, so that it iterates in the same order. (The
+            // putAll method would presize the table and spoil the match.)
+            Map<String, List<String>> m = new HashMap<String, List<String>>();
+            for (Map.Entry<String, List<String>> e : groupInOrder(words).entrySet())
+                m.put(e.getKey(), e.getValue());
+            return m;
+        }
+
+        // Returns the anagram groups in the order in which their first words
+        // appear, keyed by the alphabetized word.
+        static LinkedHashMap<String, List<String>> groupInOrder(
+                Iterator<String> words) {
+            LongMap<List<String>> bySignature = new LongMap<List<String>>();
+            Map<String, List<String>> byAlpha = new HashMap<String, List<String>>();
+            List<List<String>> groups = new ArrayList<List<String>>();
+
+            while (words.hasNext()) {
+                String word = words.next();
+                long sig = signature(word);
+                List<String> l;
+                if (sig != 0) {
+                    l = bySignature.get(sig);
+                    if (l == null)
+                        bySignature.put(sig, l = newGroup(groups));
+                } else {
+                    String alpha = alphabetize(word);
+                    l = byAlpha.get(alpha);
+                    if (l == null)
+                        byAlpha.put(alpha, l = newGroup(groups));
+                }
+                l.add(word);
+            }
+
+            LinkedHashMap<String, List<String>> m =
+                new LinkedHashMap<String, List<String>>();
+            for (List<String> l : groups)
+                m.put(alphabetize(l.get(0)), l);
+            return m;
+        }
+
+        private static List<String> newGroup(List<List<String>> groups) {
+            List<String> l = new ArrayList<String>();
+            groups.add(l);
+            return l;
+        }
+
+        // Returns the product of the primes for the letters in s, or zero if
+        // s contains anything but the letters a to z or the product overflows.
+        static long signature(String s) {
+            long product = 1;
+            for (int i = 0; i < s.length(); i++) {
+                int letter = s.charAt(i) - 'a';
+                if (letter < 0 || letter >= PRIMES.length)
+                    return 0;
+                long p = PRIMES[letter];
+                if (product > Long.MAX_VALUE / p)
+                    return 0;
+                product *= p;
+            }
+            return product;
+        }
+
+        private static String alphabetize(String s) {
+            char[] a = s.toCharArray();
+            Arrays.sort(a);
+            return new String(a);
+        }
+    }
+
+    The group method returns the same Map<String, List<String>> as the original program, not just the same groups. The groupInOrder method records the groups in the order in which their first words appear, keyed by the alphabetized first word, and group puts them into a new HashMap in that order. That's the same sequence of keys the original program put into its map, so the two maps have the same internal layout and print their groups in the same order. The output is identical, line for line. The program now builds one String key per anagram group instead of one per word, and words of sixteen letters or more cost no more than they did before.
+
+    The anagrams benchmark in the Benchmarking Collections section measures the original version. To compare the two, add a benchmark that calls Anagrams.group(words.iterator()) and run both with -prof gc; the difference in gc.alloc.rate.norm is the garbage that the signatures save.
+
+Grouping Anagrams in Parallel
+
+    Even with signatures, the Anagrams program reads its dictionary through a single Scanner and groups the words on a single core. For a dictionary of a few hundred thousand words that hardly matters, but a corpus of tens of millions of words keeps one core busy while the rest of the machine waits. Grouping is easy to divide up: any part of the file can be grouped on its own, and two partial results can be combined by appending the groups of the later part to the groups of the earlier part.
+
+    The following program does exactly that with the fork/join framework. It works in three steps:
+
+        The file is divided into shards of roughly equal size. Each shard boundary is moved forward to the next whitespace character, so that no word is cut in two. Finding the boundaries reads only a few bytes per shard.
+        A GroupTask that covers a single shard reads it with a positional read on a shared FileChannel and groups its words with the groupInOrder method from the previous section. A GroupTask that covers several shards splits itself in half, forks one half, computes the other, and merges the results.
+        The merged groups are put into a HashMap in order, exactly as in the sequential program. 
+
+    import java.util.*;
+    import java.util.concurrent.*;
+    import java.io.*;
+    import java.nio.ByteBuffer;
+    import java.nio.channels.FileChannel;
+    import java.nio.charset.StandardCharsets;
+    import java.nio.file.*;
+
+    public class ParallelAnagrams {
+        public static void main(String[] args) {
+            int minGroupSize = Integer.parseInt(args[1]);
+
+            Map<String, List<String>> m = null;
+            try {
+                m = group(Paths.get(args[0]));
+            } catch (IOException e) {
+                System.err.println(e);
+                System.exit(1);
+            }
+
+            // Print all permutation groups above size threshold
+            for (List<String> l : m.values())
+                if (l.size() >= minGroupSize)
+                    System.out.println(l.size() + ": " + l);
+        }
+
+        private static final int MAX_SHARD_SIZE = 16 * 1024 * 1024;
+
+        static Map<String, List<String>> group(Path file) throws IOException {
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+                long[] bounds = shardBounds(ch);
+                LinkedHashMap<String, List<String>> groups;
+                try {
+                    groups = ForkJoinPool.commonPool().invoke(
+                        new GroupTask(ch, bounds, 0, bounds.length - 1));
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+
+                // Same order of insertion as the sequential program, and
+                // therefore the same iteration order.
+                Map<String, List<String>> m = new HashMap<String, List<String>>();
+                for (Map.Entry<String, List<String>> e : groups.entrySet())
+                    m.put(e.getKey(), e.getValue());
+                return m;
+            }
+        }
+
+        // Divides the file into shards of roughly equal size, moving each
+        // boundary forward to the next whitespace so that no word is split.
+        private static long[] shardBounds(FileChannel ch) throws IOException {
+            long size = ch.size();
+            int shards = (int) Math.max(
+                4L * ForkJoinPool.getCommonPoolParallelism(),
+                (size + MAX_SHARD_SIZE / 2 - 1) / (MAX_SHARD_SIZE / 2));
+            long[] bounds = new long[shards + 1];
+            ByteBuffer buf = ByteBuffer.allocate(256);
+            for (int i = 1; i < shards; i++) {
+                long pos = Math.max(bounds[i - 1], size * i / shards);
+                bounds[i] = nextWhitespace(ch, pos, size, buf);
+            }
+            bounds[shards] = size;
+            return bounds;
+        }
+
+        private static long nextWhitespace(FileChannel ch, long pos, long size,
+                                           ByteBuffer buf) throws IOException {
+            while (pos < size) {
+                buf.clear();
+                int n = ch.read(buf, pos);
+                for (int i = 0; i < n; i++)
+                    if (isWhitespace(buf.get(i)))
+                        return pos + i;
+                pos += n;
+            }
+            return size;
+        }
+
+        private static boolean isWhitespace(byte b) {
+            return b == ' ' || b == '\n' || b == '\r' || b == '\t'
+                || b == '\f' || b == 0x0B;
+        }
+
+        private static class GroupTask
+                extends RecursiveTask<LinkedHashMap<String, List<String>>> {
+            private final FileChannel ch;
+            private final long[] bounds;
+            private final int lo, hi;
+
+            GroupTask(FileChannel ch, long[] bounds, int lo, int hi) {
+                this.ch = ch;
+                this.bounds = bounds;
+                this.lo = lo;
+                this.hi = hi;
+            }
+
+            protected LinkedHashMap<String, List<String>> compute() {
+                if (hi - lo == 1)
+                    return Anagrams.groupInOrder(readWords().iterator());
+
+                int mid = (lo + hi) >>> 1;
+                GroupTask right = new GroupTask(ch, bounds, mid, hi);
+                right.fork();
+                LinkedHashMap<String, List<String>> left =
+                    new GroupTask(ch, bounds, lo, mid).compute();
+                return merge(left, right.join());
+            }
+
+            // Reads the shard and splits it into words. Whitespace bytes never
+            // occur inside a multibyte UTF-8 character, so splitting the raw
+            // bytes is safe.
+            private List<String> readWords() {
+                int len = (int) (bounds[hi] - bounds[lo]);
+                ByteBuffer buf = ByteBuffer.allocate(len);
+                try {
+                    while (buf.hasRemaining())
+                        if (ch.read(buf, bounds[lo] + buf.position()) < 0)
+                            throw new EOFException();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+
+                byte[] a = buf.array();
+                List<String> words = new ArrayList<String>();
+                for (int i = 0; i < len; ) {
+                    while (i < len && isWhitespace(a[i]))
+                        i++;
+                    int start = i;
+                    while (i < len && !isWhitespace(a[i]))
+                        i++;
+                    if (i > start)
+                        words.add(new String(a, start, i - start,
+                                             StandardCharsets.UTF_8));
+                }
+                return words;
+            }
+        }
+
+        // Appends the groups found in a later part of the file to the groups
+        // found in an earlier part. Both the order of the groups and the order
+        // of the words within each group stay the same as in a sequential run.
+        private static LinkedHashMap<String, List<String>> merge(
+                LinkedHashMap<String, List<String>> left,
+                LinkedHashMap<String, List<String>> right) {
+            for (Map.Entry<String, List<String>> e : right.entrySet()) {
+                List<String> l = left.get(e.getKey());
+                if (l == null)
+                    left.put(e.getKey(), e.getValue());
+                else
+                    l.addAll(e.getValue());
+            }
+            return left;
+        }
+    }
+
+    The merge method is what makes the result come out identical to the sequential one. A merge always combines a shard range with the range that immediately follows it in the file, so appending the later words to an existing group keeps each group in file order, and appending new groups to the end of a LinkedHashMap keeps the groups in order of first appearance. At the end, group puts the groups into a HashMap in the same order that the sequential program does, and the printed output is the same, line for line.
+
+    A few details are worth pointing out:
+
+        FileChannel.read(ByteBuffer, long) doesn't use or change the channel's position, so every task can read from the same channel at the same time without any locking.
+        The fork/join framework doesn't allow compute to throw a checked exception. The readWords method wraps an IOException in an UncheckedIOException, and group unwraps it again, so the caller sees the same IOException that the sequential program reports.
+        The file is read as UTF-8, and only the six ASCII whitespace characters separate words. Scanner also treats a few rare Unicode spaces as separators; if your dictionary contains them, the two programs will disagree.
+        There are at least four shards per worker thread, so a thread that finishes early can steal work from one that is still busy, and no shard is larger than 16 megabytes, so large files don't need huge buffers. 
+
+    How well does this scale? Reading and grouping the shards is completely independent, so that part of the work divides evenly among the cores. The merges are not free, though: each one costs time proportional to the number of distinct groups in its right half, and the last merge runs on one core. On a corpus with many repeated words, such as running text, the groups are few and the scaling is close to linear. On a dictionary, where nearly every word forms a group of its own, the final merges dominate well before sixteen cores. Measure with your own data, and vary the number of cores with -Djava.util.concurrent.ForkJoinPool.common.parallelism.
@@ -57,3 +57,525 @@ static <E> List<E> heapSort(Collection<E> c) {
         result.add(queue.remove());
     return result;
 }
+
+The heapSort method above is worth a second look, because it shows where the time goes when a PriorityQueue is used for numbers. Every element is a reference to an object; sorting ints means boxing every one of them into an Integer, following a pointer for every comparison, and copying the results one at a time into an ArrayList that grows as it goes. When the elements really are primitive values, a heap that stores them in a primitive array avoids all of that.
+
+IntHeap is such a heap. It is a min-heap, like PriorityQueue with natural ordering, and it adds two features. First, its arity is configurable. In a binary heap each node has two children; in a 4-ary or 8-ary heap it has four or eight. A wider heap is shallower, so adding an element moves it up fewer levels, and removing the smallest looks at more children per level but makes fewer levels' worth of cache misses, since the children of a node sit next to each other in the array. Which arity wins depends on the workload, which is why it is a parameter. Restricting the arity to powers of two lets the index arithmetic use shifts instead of divisions. Second, IntHeap can be built from an array of values all at once. Adding n values one at a time takes n log n time; Floyd's method, which sifts down each parent node starting from the last, takes linear time.
+
+import java.util.*;
+
+public class IntHeap {
+    private final int shift;   // log2 of the arity
+    private int[] a;
+    private int size;
+
+    public IntHeap(int arity) {
+        this(arity, new int[0]);
+    }
+
+    // Builds a heap from the given values in linear time.
+    public IntHeap(int arity, int[] values) {
+        if (arity < 2 || Integer.bitCount(arity) != 1)
+            throw new IllegalArgumentException("arity: " + arity);
+        shift = Integer.numberOfTrailingZeros(arity);
+        a = Arrays.copyOf(values, Math.max(values.length, 16));
+        size = values.length;
+        heapify();
+    }
+
+    public void add(int value) {
+        if (size == a.length)
+            a = Arrays.copyOf(a, size * 2);
+        siftUp(size++, value);
+    }
+
+    public int peek() {
+        if (size == 0)
+            throw new NoSuchElementException();
+        return a[0];
+    }
+
+    public int poll() {
+        int result = peek();
+        int last = a[--size];
+        if (size > 0)
+            siftDown(0, last);
+        return result;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // Floyd's method: sift down every parent, starting from the last one.
+    private void heapify() {
+        for (int i = (size - 2) >> shift; i >= 0; i--)
+            siftDown(i, a[i]);
+    }
+
+    private void siftUp(int i, int value) {
+        while (i > 0) {
+            int parent = (i - 1) >> shift;
+            if (a[parent] <= value)
+                break;
+            a[i] = a[parent];
+            i = parent;
+        }
+        a[i] = value;
+    }
+
+    private void siftDown(int i, int value) {
+        for (int first; (first = (i << shift) + 1) < size; ) {
+            int last = Math.min(first + (1 << shift), size);
+            int child = first;
+            for (int j = first + 1; j < last; j++)
+                if (a[j] < a[child])
+                    child = j;
+            if (value <= a[child])
+                break;
+            a[i] = a[child];
+            i = child;
+        }
+        a[i] = value;
+    }
+}
+
+Note that the sift methods don't swap elements. Each one holds the value being moved in a local variable, shifts parents down (or children up) into the hole, and writes the value once, when its final position is known.
+
+LongHeap is the same class with int replaced by long wherever it refers to a value. The size, the indices and the arity stay ints, and so does shift, which is why the index arithmetic is unchanged. Here is LongHeap in full, to copy.
+
+import java.util.*;
+
+public class LongHeap {
+    private final int shift;   // log2 of the arity
+    private long[] a;
+    private int size;
+
+    public LongHeap(int arity) {
+        this(arity, new long[0]);
+    }
+
+    // Builds a heap from the given values in linear time.
+    public LongHeap(int arity, long[] values) {
+        if (arity < 2 || Integer.bitCount(arity) != 1)
+            throw new IllegalArgumentException("arity: " + arity);
+        shift = Integer.numberOfTrailingZeros(arity);
+        a = Arrays.copyOf(values, Math.max(values.length, 16));
+        size = values.length;
+        heapify();
+    }
+
+    public void add(long value) {
+        if (size == a.length)
+            a = Arrays.copyOf(a, size * 2);
+        siftUp(size++, value);
+    }
+
+    public long peek() {
+        if (size == 0)
+            throw new NoSuchElementException();
+        return a[0];
+    }
+
+    public long poll() {
+        long result = peek();
+        long last = a[--size];
+        if (size > 0)
+            siftDown(0, last);
+        return result;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // Floyd's method: sift down every parent, starting from the last one.
+    private void heapify() {
+        for (int i = (size - 2) >> shift; i >= 0; i--)
+            siftDown(i, a[i]);
+    }
+
+    private void siftUp(int i, long value) {
+        while (i > 0) {
+            int parent = (i - 1) >> shift;
+            if (a[parent] <= value)
+                break;
+            a[i] = a[parent];
+            i = parent;
+        }
+        a[i] = value;
+    }
+
+    private void siftDown(int i, long value) {
+        for (int first; (first = (i << shift) + 1) < size; ) {
+            int last = Math.min(first + (1 << shift), size);
+            int child = first;
+            for (int j = first + 1; j < last; j++)
+                if (a[j] < a[child])
+                    child = j;
+            if (value <= a[child])
+                break;
+            a[i] = a[child];
+            i = child;
+        }
+        a[i] = value;
+    }
+}
+
+DoubleHeap is LongHeap with double for long, and with one more change: its comparisons must use Double.compare rather than < and <=, so that NaN and -0.0 are ordered the same way Arrays.sort orders them. With the operators, a NaN compares false against everything and ends up in an arbitrary position. Here are DoubleHeap's sift methods.
+
+private void siftUp(int i, double value) {
+    while (i > 0) {
+        int parent = (i - 1) >> shift;
+        if (Double.compare(a[parent], value) <= 0)
+            break;
+        a[i] = a[parent];
+        i = parent;
+    }
+    a[i] = value;
+}
+
+private void siftDown(int i, double value) {
+    for (int first; (first = (i << shift) + 1) < size; ) {
+        int last = Math.min(first + (1 << shift), size);
+        int child = first;
+        for (int j = first + 1; j < last; j++)
+            if (Double.compare(a[j], a[child]) < 0)
+                child = j;
+        if (Double.compare(value, a[child]) <= 0)
+            break;
+        a[i] = a[child];
+        i = child;
+    }
+    a[i] = value;
+}
+
+Double.compare orders -0.0 before 0.0 and puts NaN after everything else, positive infinity included, so a DoubleHeap with NaNs in it returns them last, just as they come last in an array sorted by Arrays.sort.
+
+For the general case, where the elements are objects, there's still no need for a PriorityQueue. The following version of heapSort dumps the collection into an array and sorts the array in place. It builds a max-heap in the array, then repeatedly swaps the largest remaining element to the end of the unsorted part. No nodes, no extra array, and the only copy is the one into the result list.
+
+static <E> List<E> heapSort(Collection<E> c) {
+    Object[] a = c.toArray();
+    heapSort(a);
+    @SuppressWarnings("unchecked")
+    List<E> result = (List<E>) new ArrayList<Object>(Arrays.asList(a));
+    return result;
+}
+
+// Sorts a into ascending natural order, in place: build a max-heap,
+// then repeatedly swap the largest element to the end of the array.
+private static void heapSort(Object[] a) {
+    for (int i = (a.length - 2) / 2; i >= 0; i--)
+        siftDown(a, i, a[i], a.length);
+    for (int end = a.length - 1; end > 0; end--) {
+        Object max = a[0];
+        siftDown(a, 0, a[end], end);
+        a[end] = max;
+    }
+}
+
+@SuppressWarnings("unchecked")
+private static void siftDown(Object[] a, int i, Object x, int size) {
+    Comparable<Object> key = (Comparable<Object>) x;
+    for (int child; (child = 2 * i + 1) < size; i = child) {
+        if (child + 1 < size
+                && ((Comparable<Object>) a[child + 1]).compareTo(a[child]) > 0)
+            child++;
+        if (key.compareTo(a[child]) >= 0)
+            break;
+        a[i] = a[child];
+    }
+    a[i] = x;
+}
+
+Like the PriorityQueue version, this heapSort uses the elements' natural ordering and throws ClassCastException if they aren't mutually comparable. Unlike Collections.sort, heapsort isn't stable, so don't use it for elements that compare equal without being interchangeable. The HeapBenchmark in the Benchmarking Collections section compares all these heaps with PriorityQueue and Arrays.sort.
+
+The Countdown program earlier in this section uses a queue to hold values until it is time to process them, and Thread.sleep to decide when that time has come. That works because the values are due in order, one second apart. Real programs that need timers, such as network servers with a timeout on every connection, have millions of them, due at unrelated times, and most are cancelled before they ever fire, because the operation they guard finishes in time. For them, the cost of scheduling and cancelling a timer matters far more than the cost of firing one.
+
+The java.util.concurrent package offers DelayQueue and ScheduledThreadPoolExecutor, both of which keep their timers in a heap, so scheduling a timer takes O(log n) time. DelayQueue can't cancel a timer except with remove(Object), which searches the whole queue. A timing wheel does better for both operations. Picture a clock face with 64 slots, one per tick. A timer due in 5 ticks goes into the slot 5 places ahead of the hand. Every tick the hand advances one slot, and every timer in that slot has expired. Scheduling and cancelling a timer are both constant-time operations on a linked list.
+
+A single wheel only reaches 64 ticks into the future. A hierarchical timing wheel adds more wheels, like the hands of a clock: each slot of the second wheel covers 64 ticks, each slot of the third covers 64 × 64 ticks, and so on. A timer goes on the coarsest wheel it needs. When the first wheel completes a revolution, the second wheel's current slot is emptied and its timers are spread over the first wheel; this is called cascading. With eleven wheels of 64 slots, the deadline can be any long value, and no timer is ever cascaded more than ten times.
+
+The following TimingWheel implements this scheme. A timer is placed on the wheel of the highest bit in which its deadline differs from the current tick, in the slot given by the deadline's bits for that wheel. Each wheel also keeps a 64-bit mask of its occupied slots, which lets the wheel skip over empty ticks instead of visiting every one. This is what makes it practical to process ticks in batches: if no one has looked at the wheel for a second, catching up takes time proportional to the number of timers that expired, not to the thousand ticks that passed.
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.*;
+
+public class TimingWheel<E> {
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final long MASK = SLOTS - 1;
+    private static final int LEVELS = (Long.SIZE + BITS - 1) / BITS;
+
+    public static final class Timeout<E> {
+        private final TimingWheel<E> wheel;
+        private final E element;
+        private final long deadline;
+        private Timeout<E> prev, next;
+        private int level, slot;
+        private boolean pending = true;
+
+        private Timeout(TimingWheel<E> wheel, E element, long deadline) {
+            this.wheel = wheel;
+            this.element = element;
+            this.deadline = deadline;
+        }
+
+        public E element() {
+            return element;
+        }
+
+        // Returns true if the timer was still pending and will now never
+        // expire, false if it has already expired or been cancelled.
+        public boolean cancel() {
+            wheel.lock.lock();
+            try {
+                if (!pending)
+                    return false;
+                wheel.unlink(this);
+                return true;
+            } finally {
+                wheel.lock.unlock();
+            }
+        }
+    }
+
+    private final long tickNanos;
+    private final long origin = System.nanoTime();
+    private final Timeout<E>[][] wheels;
+    private final long[] occupied = new long[LEVELS];  // one bit per slot
+    private final Queue<E> expired = new ArrayDeque<E>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private long now;       // the last tick processed
+    private int pending;
+
+    @SuppressWarnings("unchecked")
+    public TimingWheel(long tickDuration, TimeUnit unit) {
+        tickNanos = unit.toNanos(tickDuration);
+        if (tickNanos <= 0)
+            throw new IllegalArgumentException("tick: " + tickDuration);
+        wheels = (Timeout<E>[][]) new Timeout<?>[LEVELS][SLOTS];
+    }
+
+    public Timeout<E> schedule(E element, long delay, TimeUnit unit) {
+        if (element == null)
+            throw new NullPointerException();
+        long nanos = Math.min(Math.max(0, unit.toNanos(delay)), Long.MAX_VALUE / 2);
+        lock.lock();
+        try {
+            // Round up, so that a timer never expires early.
+            long deadline = (System.nanoTime() - origin + nanos + tickNanos - 1)
+                            / tickNanos;
+            Timeout<E> t = new Timeout<E>(this, element, deadline);
+            pending++;
+            if (t.deadline <= now)
+                expire(t);
+            else
+                place(t);
+            changed.signal();
+            return t;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Retrieves and removes an expired element, or returns null if no
+    // timer has expired.
+    public E poll() {
+        lock.lock();
+        try {
+            advance(currentTick());
+            return expired.poll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Moves every expired element to c, and returns how many were moved.
+    public int drainTo(Collection<? super E> c) {
+        lock.lock();
+        try {
+            advance(currentTick());
+            int n = expired.size();
+            for (E e; (e = expired.poll()) != null; )
+                c.add(e);
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Retrieves and removes an expired element, waiting if necessary.
+    public E take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            for (;;) {
+                advance(currentTick());
+                E e = expired.poll();
+                if (e != null)
+                    return e;
+                if (pending == 0)
+                    changed.await();
+                else
+                    changed.awaitNanos(origin + nextEventTick() * tickNanos
+                                       - System.nanoTime());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // The number of timers that have been scheduled and have not yet
+    // been cancelled or removed by poll, drainTo or take.
+    public int size() {
+        lock.lock();
+        try {
+            return pending + expired.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long currentTick() {
+        return (System.nanoTime() - origin) / tickNanos;
+    }
+
+    // A timer goes on the level of the highest bit in which its deadline
+    // differs from now, in the slot given by the deadline's bits at that
+    // level. It stays there until now reaches that slot.
+    private void place(Timeout<E> t) {
+        long diff = t.deadline ^ now;
+        int level = (diff == 0) ? 0 : (63 - Long.numberOfLeadingZeros(diff)) / BITS;
+        int slot = (int) ((t.deadline >>> (level * BITS)) & MASK);
+        Timeout<E> head = wheels[level][slot];
+        t.level = level;
+        t.slot = slot;
+        t.prev = null;
+        t.next = head;
+        if (head != null)
+            head.prev = t;
+        wheels[level][slot] = t;
+        occupied[level] |= 1L << slot;
+    }
+
+    private void unlink(Timeout<E> t) {
+        if (t.prev != null)
+            t.prev.next = t.next;
+        else if ((wheels[t.level][t.slot] = t.next) == null)
+            occupied[t.level] &= ~(1L << t.slot);
+        if (t.next != null)
+            t.next.prev = t.prev;
+        t.prev = t.next = null;
+        t.pending = false;
+        pending--;
+    }
+
+    private void expire(Timeout<E> t) {
+        t.pending = false;
+        pending--;
+        expired.add(t.element);
+    }
+
+    // Removes every timer from a slot, leaving the slot empty.
+    private Timeout<E> detach(int level, int slot) {
+        Timeout<E> head = wheels[level][slot];
+        wheels[level][slot] = null;
+        occupied[level] &= ~(1L << slot);
+        return head;
+    }
+
+    // Processes every tick up to target. Ticks on which nothing can
+    // happen are skipped, so catching up costs time proportional to the
+    // number of timers that expire or cascade, not to the number of ticks.
+    private void advance(long target) {
+        while (pending > 0) {
+            long t = nextEventTick();
+            if (t > target)
+                break;
+            now = t;
+            if ((t & MASK) == 0)
+                cascade(t);
+            for (Timeout<E> e = detach(0, (int) (t & MASK)), next; e != null; e = next) {
+                next = e.next;
+                e.prev = e.next = null;
+                expire(e);
+            }
+        }
+        now = Math.max(now, target);
+    }
+
+    // The next tick on which something happens: the first occupied slot
+    // ahead of now on the lowest level that has one. On level 0 that's a
+    // tick whose timers expire; on a higher level, it's the tick on which
+    // the slot's timers cascade. Every occupied slot is ahead of now on its
+    // level, and a lower level's slots all come before a higher level's.
+    private long nextEventTick() {
+        for (int level = 0; level < LEVELS; level++) {
+            int shift = level * BITS;
+            int digit = (int) ((now >>> shift) & MASK);
+            long ahead = (occupied[level] >>> digit) >>> 1;
+            if (ahead != 0) {
+                long slot = digit + 1 + Long.numberOfTrailingZeros(ahead);
+                int above = shift + BITS;
+                long high = (above >= Long.SIZE) ? 0 : (now >>> above) << above;
+                return high | (slot << shift);
+            }
+        }
+        return Long.MAX_VALUE;    // no timers
+    }
+
+    // Now has just entered a new slot on every level whose lower bits are
+    // all zero. Spread the timers in those slots over the lower levels.
+    private void cascade(long t) {
+        int top = 1;
+        while (top < LEVELS - 1 && (t & ((1L << ((top + 1) * BITS)) - 1)) == 0)
+            top++;
+        for (int level = top; level >= 1; level--) {
+            int slot = (int) ((t >>> (level * BITS)) & MASK);
+            for (Timeout<E> e = detach(level, slot), next; e != null; e = next) {
+                next = e.next;
+                place(e);
+            }
+        }
+    }
+}
+
+Expired elements go into an ordinary queue, and the methods for taking them out follow the conventions of Queue and BlockingQueue: poll returns null if nothing has expired, drainTo moves everything that has expired into a collection, and take waits. Each of them first brings the wheel up to date with the clock, so there's no need for a separate thread to turn the wheel. The take method sleeps until the next tick on which something can happen, or until a new timer is scheduled.
+
+The wheel is guarded by a ReentrantLock rather than by synchronized methods. When a virtual thread waits on a Condition, it releases the platform thread that is carrying it; on JDK releases before 24, a virtual thread blocked in a synchronized method can't. Many virtual threads can therefore call take on the same wheel without tying up the carrier threads underneath them.
+
+A few details are worth noting:
+
+    Deadlines are rounded up to the next tick, so a timer never expires early. It may expire up to one tick late, and no timer can be more precise than the tick. A tick of a millisecond or so suits network timeouts; there's no point making it finer than the precision you need.
+    Expired elements are returned in the order of their ticks. Timers that expire on the same tick come out in no particular order.
+    A Timeout can be cancelled until it expires. After that, cancel returns false, even if the element hasn't yet been taken out of the wheel.
+    The wheel allocates one Timeout per timer, and nothing else. 
+
+Here's Countdown, rewritten to schedule every number at once. The program no longer sleeps; take waits for each timer in turn.
+
+import java.util.concurrent.TimeUnit;
+
+public class Countdown {
+    public static void main(String[] args)
+            throws InterruptedException {
+        int time = Integer.parseInt(args[0]);
+        TimingWheel<Integer> timers =
+            new TimingWheel<Integer>(10, TimeUnit.MILLISECONDS);
+        for (int i = time; i >= 0; i--)
+            timers.schedule(i, time - i, TimeUnit.SECONDS);
+        while (timers.size() > 0)
+            System.out.println(timers.take());
+    }
+}
+
+The TimerBenchmark in the Benchmarking Collections section compares the cost of scheduling and cancelling a timer in TimingWheel, DelayQueue and ScheduledThreadPoolExecutor when a million or more timers are already pending.
@@ -142,3 +142,444 @@ Set Interface Bulk Operations
 Set Interface Array Operations
 
     The array operations don't do anything special for Sets beyond what they do for any other Collection. These operations are described in The Collection Interface section. 
+
+Finding Duplicates in Large Inputs
+
+    FindDups and FindDups2 keep every distinct word in a HashSet, so they need memory for all of them at once: an entry in a HashSet costs several dozen bytes before counting the String itself. For a few million words that's fine, but a job that has to find the repeated keys among billions can't hold them all on the heap. This section shows how to get exactly the same answers while keeping only a few bits per word in memory, provided the words come from a file that can be read twice.
+
+    The idea is that most words, in most such jobs, occur only once, and a word that occurs once never needs to be looked up again. A Bloom filter can tell, in a few bits per word, that a word has certainly not been seen before; it can't say for certain that one has, since a word it has never seen sometimes finds all of its bits set by other words. Such a false positive happens for a fraction of words, fpp, which you choose when you size the filter: the smaller the fraction, the more bits per word. A filter sized for a 2 percent false-positive rate takes about 9 bits per word.
+
+    An ordinary Bloom filter sets k bits scattered over the whole bit array for each word, so every test touches k cache lines. BlockedBloomFilter puts all k bits for a word in one block of 512 bits, which is one cache line on most machines. The price is that some blocks end up with more words than others, and the fuller blocks give a higher false-positive rate, so the filter takes a tenth more bits than an ordinary one would for the same rate. The filter needs a good hash of 64 bits, too; String.hashCode has only 32, and among a billion words many would share a hash.
+
+    // A Bloom filter whose bits for any one key all lie in a single block of
+    // 512 bits, the size of a typical cache line, so that testing or adding a
+    // key touches one line of memory instead of k scattered ones.
+    public class BlockedBloomFilter {
+        private static final int BLOCK_LONGS = 8;        // 512 bits
+
+        private final long[] bits;
+        private final long blocks;
+        private final int k;                             // bits set per key
+
+        // Sizes the filter for the given number of keys and false-positive rate.
+        public BlockedBloomFilter(long expectedKeys, double fpp) {
+            if (fpp <= 0 || fpp >= 1)
+                throw new IllegalArgumentException("fpp: " + fpp);
+            // The textbook size and number of bits for an unblocked filter. Keys
+            // don't spread evenly over the blocks, and the fuller blocks raise the
+            // rate, so the filter gets a tenth more bits than that.
+            double bitsPerKey = -Math.log(fpp) / (Math.log(2) * Math.log(2));
+            k = Math.max(1, (int) Math.round(bitsPerKey * Math.log(2)));
+            bitsPerKey *= 1.1;
+            long b = (long) Math.ceil(Math.max(1, expectedKeys) * bitsPerKey / 512);
+            if (b * BLOCK_LONGS > Integer.MAX_VALUE - 8)
+                throw new IllegalArgumentException("filter too large: " + b + " blocks");
+            blocks = b;
+            bits = new long[(int) (b * BLOCK_LONGS)];
+        }
+
+        // Adds s, returning true if it might have been added before and false
+        // if it certainly wasn't.
+        public boolean add(String s) {
+            long h = hash(s);
+            int base = (int) (((h >>> 32) * blocks) >>> 32) * BLOCK_LONGS;
+            boolean present = true;
+            for (int i = 0; i < k; i++) {
+                h = h * 6364136223846793005L + 1442695040888963407L;
+                int bit = (int) (h >>> 55);              // 0 to 511
+                long mask = 1L << bit;
+                int word = base + (bit >>> 6);
+                if ((bits[word] & mask) == 0) {
+                    present = false;
+                    bits[word] |= mask;
+                }
+            }
+            return present;
+        }
+
+        public boolean mightContain(String s) {
+            long h = hash(s);
+            int base = (int) (((h >>> 32) * blocks) >>> 32) * BLOCK_LONGS;
+            for (int i = 0; i < k; i++) {
+                h = h * 6364136223846793005L + 1442695040888963407L;
+                int bit = (int) (h >>> 55);
+                if ((bits[base + (bit >>> 6)] & (1L << bit)) == 0)
+                    return false;
+            }
+            return true;
+        }
+
+        public long bitCount() {
+            return (long) bits.length * 64;
+        }
+
+        // String.hashCode has only 32 bits, too few to tell a billion keys
+        // apart, so this is 64-bit FNV-1a over the chars, then the finalizer
+        // from MurmurHash3 to spread the result over every bit.
+        static long hash(String s) {
+            long h = 0xcbf29ce484222325L;
+            for (int i = 0; i < s.length(); i++)
+                h = (h ^ s.charAt(i)) * 0x100000001b3L;
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb9fe1a85ec53L;
+            h ^= h >>> 33;
+            return h;
+        }
+    }
+
+    DuplicateFinder reads its input twice. The first pass adds every word to a BlockedBloomFilter. A word whose bits were all set already might be a duplicate, so it goes on a list of suspects; every real duplicate is a suspect, because the filter never forgets a word, and so are the fraction fpp of the other words. The suspects are kept in a MappedMap, from the Custom Collection Implementations section, so they spill to disk instead of filling the heap. After the first pass the big filter is discarded, and a much smaller one is built of just the suspects.
+
+    The second pass does the exact work. A word that isn't a suspect occurs only once, so it is simply recorded as distinct and forgotten. A suspect's state in the map goes from candidate, to seen once, to duplicate, and every occurrence after the first is reported, as FindDups reports it. The map is written at most twice for each suspect, and the small filter means that the map isn't consulted for the words that aren't suspects. The distinct words and the duplicates are written to temporary files as they are found, so that they can be printed at the end without being held in memory.
+
+    import java.io.*;
+    import java.nio.ByteBuffer;
+    import java.nio.charset.StandardCharsets;
+    import java.nio.file.*;
+    import java.util.*;
+    import java.util.function.Consumer;
+    import java.util.stream.Stream;
+
+    // Finds the duplicate words in a file too large for a HashSet, in two
+    // passes. The first screens every word through a Bloom filter; the second
+    // counts, exactly and on disk, only the words the first found suspicious.
+    public class DuplicateFinder implements Closeable {
+        // How far a suspicious word has got: registered in the first pass, seen
+        // once, or seen more than once in the second.
+        private static final int CANDIDATE = 0, SEEN = 1, DUPLICATE = 2;
+
+        // Words sorted in memory at a time, and sorted runs merged at a time,
+        // when putting the words into HashSet order.
+        private static final int RUN_SIZE = 1 << 20, MERGE_WIDTH = 64;
+
+        private static final Codec<Integer> STATE = new Codec<Integer>() {
+            public byte[] encode(Integer value) {
+                return new byte[] { value.byteValue() };
+            }
+
+            public Integer decode(ByteBuffer src) {
+                return (int) src.get();
+            }
+        };
+
+        private final Path input;
+        private final Path dir;
+        private final MappedMap<String, Integer> suspects;
+        private final BlockedBloomFilter candidates;
+        private long distinct;
+        private long duplicates;
+        private int files;
+        private boolean scanned;
+
+        // Screens input, whose words are expected to number about expectedWords
+        // distinct ones, with a filter that has a false-positive rate of fpp.
+        // Temporary files go in a new directory under tmp, which is deleted
+        // again if the screening fails.
+        public DuplicateFinder(Path input, long expectedWords, double fpp, Path tmp)
+                throws IOException {
+            this.input = input;
+            dir = Files.createTempDirectory(tmp, "dups");
+            try {
+                suspects = new MappedMap<String, Integer>(dir.resolve("suspects"),
+                                                          Codec.UTF_8, STATE);
+                candidates = screen(expectedWords, fpp);
+            } catch (IOException | RuntimeException | Error e) {
+                try {
+                    close();
+                } catch (IOException | RuntimeException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+                throw e;
+            }
+        }
+
+        private BlockedBloomFilter screen(long expectedWords, double fpp)
+                throws IOException {
+            // Every word after its first occurrence is reported as already
+            // added, so every duplicate becomes a suspect, along with the
+            // fraction fpp of the rest that the filter reports wrongly.
+            BlockedBloomFilter filter = new BlockedBloomFilter(expectedWords, fpp);
+            forEachWord(w -> {
+                if (filter.add(w) && !suspects.containsKey(w))
+                    suspects.put(w, CANDIDATE);
+            });
+
+            // The screen can go now; a much smaller filter of the suspects lets
+            // the second pass skip the disk for everything else.
+            BlockedBloomFilter suspected = new BlockedBloomFilter(suspects.size(), fpp);
+            for (String w : suspects.keySet())
+                suspected.add(w);
+            return suspected;
+        }
+
+        // Reads the file again, calling action for every occurrence of a word
+        // after its first, in order, and recording the distinct and duplicate
+        // words in the order the HashSets of FindDups and FindDups2 would hold
+        // them. The scan moves each suspect's state forward for good, so it
+        // can be done only once.
+        public void scan(Consumer<? super String> action) throws IOException {
+            if (scanned)
+                throw new IllegalStateException("already scanned");
+            scanned = true;
+            try (BufferedWriter firsts = writer("distinct");
+                 BufferedWriter dups = writer("duplicates")) {
+                forEachWord(w -> {
+                    Integer state = candidates.mightContain(w) ? suspects.get(w) : null;
+                    if (state == null || state == CANDIDATE) {
+                        // Not a suspect, so this is its only occurrence, or a
+                        // suspect's first.
+                        if (state != null)
+                            suspects.put(w, SEEN);
+                        write(firsts, w);
+                        distinct++;
+                        return;
+                    }
+                    if (state == SEEN) {
+                        suspects.put(w, DUPLICATE);
+                        write(dups, w);
+                        duplicates++;
+                    }
+                    action.accept(w);
+                });
+            }
+            sortIntoHashOrder("distinct", distinct);
+            sortIntoHashOrder("duplicates", duplicates);
+        }
+
+        public long distinctCount() {
+            return distinct;
+        }
+
+        // The distinct words, in the order a HashSet of them iterates.
+        public Stream<String> distinctWords() throws IOException {
+            return Files.lines(dir.resolve("distinct"), StandardCharsets.UTF_8);
+        }
+
+        // The duplicated words, in the order a HashSet of them iterates.
+        public Stream<String> duplicateWords() throws IOException {
+            return Files.lines(dir.resolve("duplicates"), StandardCharsets.UTF_8);
+        }
+
+        public boolean isDuplicate(String w) {
+            Integer state = candidates.mightContain(w) ? suspects.get(w) : null;
+            return state != null && state == DUPLICATE;
+        }
+
+        // Prints words as AbstractCollection.toString would, without holding them.
+        public static void print(Stream<String> words, PrintStream out) {
+            out.print('[');
+            Iterator<String> i = words.iterator();
+            while (i.hasNext()) {
+                out.print(i.next());
+                if (i.hasNext())
+                    out.print(", ");
+            }
+            out.println(']');
+        }
+
+        // Deletes the temporary files.
+        public void close() throws IOException {
+            if (suspects != null)
+                suspects.close();
+            try (Stream<Path> files = Files.list(dir)) {
+                for (Path f : (Iterable<Path>) files::iterator)
+                    Files.delete(f);
+            }
+            Files.delete(dir);
+        }
+
+        // Splits the input at whitespace, as the shell splits a command line.
+        private void forEachWord(Consumer<String> action) throws IOException {
+            try (BufferedReader in = Files.newBufferedReader(input, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    int i = 0, n = line.length();
+                    while (i < n) {
+                        while (i < n && Character.isWhitespace(line.charAt(i)))
+                            i++;
+                        int start = i;
+                        while (i < n && !Character.isWhitespace(line.charAt(i)))
+                            i++;
+                        if (i > start)
+                            action.accept(line.substring(start, i));
+                    }
+                }
+            }
+        }
+
+        // A HashSet iterates its table bucket by bucket, and each bucket in the
+        // order its words were added. The file name holds size words in the
+        // order they were added, so sorting it stably by bucket gives the
+        // HashSet's order. Runs of RUN_SIZE words are sorted in memory and
+        // then merged, MERGE_WIDTH runs at a time, with ties going to the
+        // earlier run.
+        private void sortIntoHashOrder(String name, long size) throws IOException {
+            int table = tableSize(size);
+            Comparator<String> byBucket = Comparator.comparingInt(w -> bucket(w, table));
+            List<Path> runs = new ArrayList<Path>();
+            try (BufferedReader in = Files.newBufferedReader(dir.resolve(name),
+                                                             StandardCharsets.UTF_8)) {
+                List<String> run = new ArrayList<String>();
+                String w;
+                do {
+                    w = in.readLine();
+                    if (w != null)
+                        run.add(w);
+                    if (run.size() == RUN_SIZE || (w == null && !run.isEmpty())) {
+                        run.sort(byBucket);    // List.sort is stable
+                        Path p = newFile();
+                        Files.write(p, run, StandardCharsets.UTF_8);
+                        runs.add(p);
+                        run.clear();
+                    }
+                } while (w != null);
+            }
+            while (runs.size() > 1) {
+                List<Path> merged = new ArrayList<Path>();
+                for (int i = 0; i < runs.size(); i += MERGE_WIDTH)
+                    merged.add(merge(runs.subList(i, Math.min(i + MERGE_WIDTH, runs.size())),
+                                     table));
+                runs = merged;
+            }
+            if (!runs.isEmpty())
+                Files.move(runs.get(0), dir.resolve(name), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        private Path merge(List<Path> runs, int table) throws IOException {
+            // Each head is a run's next word and the run's position in runs.
+            class Head {
+                final String word;
+                final int bucket, run;
+
+                Head(String word, int run) {
+                    this.word = word;
+                    this.bucket = bucket(word, table);
+                    this.run = run;
+                }
+            }
+            PriorityQueue<Head> heads = new PriorityQueue<Head>(
+                Comparator.<Head>comparingInt(h -> h.bucket).thenComparingInt(h -> h.run));
+            List<BufferedReader> in = new ArrayList<BufferedReader>();
+            Path p = newFile();
+            try (BufferedWriter out = Files.newBufferedWriter(p, StandardCharsets.UTF_8)) {
+                for (int r = 0; r < runs.size(); r++) {
+                    in.add(Files.newBufferedReader(runs.get(r), StandardCharsets.UTF_8));
+                    String w = in.get(r).readLine();
+                    if (w != null)
+                        heads.add(new Head(w, r));
+                }
+                while (!heads.isEmpty()) {
+                    Head h = heads.poll();
+                    write(out, h.word);
+                    String w = in.get(h.run).readLine();
+                    if (w != null)
+                        heads.add(new Head(w, h.run));
+                }
+            } finally {
+                for (BufferedReader r : in)
+                    r.close();
+            }
+            for (Path run : runs)
+                Files.delete(run);
+            return p;
+        }
+
+        // HashMap, and so HashSet, starts with 16 buckets, and doubles them
+        // whenever it holds more than three quarters as many entries.
+        private static int tableSize(long size) {
+            int n = 16;
+            while (n < 1 << 30 && size > n / 4 * 3)
+                n <<= 1;
+            return n;
+        }
+
+        // HashMap folds the high half of the hash code into the low half,
+        // and then keeps as many of the low bits as the table needs.
+        private static int bucket(String w, int table) {
+            int h = w.hashCode();
+            return (h ^ (h >>> 16)) & (table - 1);
+        }
+
+        private Path newFile() {
+            return dir.resolve("run" + files++);
+        }
+
+        private BufferedWriter writer(String name) throws IOException {
+            return Files.newBufferedWriter(dir.resolve(name), StandardCharsets.UTF_8);
+        }
+
+        private static void write(BufferedWriter out, String w) {
+            try {
+                out.write(w);
+                out.newLine();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    Here are FindDups and FindDups2 written with DuplicateFinder. Each takes the name of a file of words separated by whitespace, an estimate of the number of distinct words, and, optionally, the false-positive rate.
+
+    import java.nio.file.*;
+    import java.util.stream.Stream;
+
+    public class StreamingFindDups {
+        public static void main(String[] args) throws Exception {
+            Path words = Paths.get(args[0]);
+            long expected = Long.parseLong(args[1]);
+            double fpp = (args.length > 2) ? Double.parseDouble(args[2]) : 0.02;
+            Path tmp = Paths.get(System.getProperty("java.io.tmpdir"));
+
+            try (DuplicateFinder f = new DuplicateFinder(words, expected, fpp, tmp)) {
+                f.scan(a -> System.out.println("Duplicate detected: " + a));
+
+                System.out.print(f.distinctCount() + " distinct words: ");
+                try (Stream<String> s = f.distinctWords()) {
+                    DuplicateFinder.print(s, System.out);
+                }
+            }
+        }
+    }
+
+    import java.nio.file.*;
+    import java.util.stream.Stream;
+
+    public class StreamingFindDups2 {
+        public static void main(String[] args) throws Exception {
+            Path words = Paths.get(args[0]);
+            long expected = Long.parseLong(args[1]);
+            double fpp = (args.length > 2) ? Double.parseDouble(args[2]) : 0.02;
+            Path tmp = Paths.get(System.getProperty("java.io.tmpdir"));
+
+            try (DuplicateFinder f = new DuplicateFinder(words, expected, fpp, tmp)) {
+                f.scan(a -> { });
+
+                System.out.print("Unique words:    ");
+                try (Stream<String> s = f.distinctWords()) {
+                    DuplicateFinder.print(s.filter(w -> !f.isDuplicate(w)), System.out);
+                }
+                System.out.print("Duplicate words: ");
+                try (Stream<String> s = f.duplicateWords()) {
+                    DuplicateFinder.print(s, System.out);
+                }
+            }
+        }
+    }
+
+    Given a file holding the same words used earlier (i came i saw i left), the programs print the following.
+
+    % java StreamingFindDups words.txt 1000
+    Duplicate detected: i
+    Duplicate detected: i
+    4 distinct words: [left, came, saw, i]
+
+    % java StreamingFindDups2 words.txt 1000
+    Unique words:    [left, came, saw]
+    Duplicate words: [i]
+
+    That's exactly what FindDups and FindDups2 print on Java SE 8 and later, down to the order of the words. (The outputs shown earlier in this section came from an older release, whose HashMap mixed the bits of hash codes differently.) A HashSet's order looks chaotic, but it follows from the words alone. HashSet keeps its words in a HashMap, whose table starts at 16 buckets and doubles whenever it is more than three quarters full, so its final size depends only on the number of words. Each word's bucket follows from its hash code and that size, and the table is iterated bucket by bucket, each bucket in the order its words were added. DuplicateFinder writes the words in the order they were added and then sorts them stably by bucket on disk: it sorts runs of a million words in memory, and merges the runs. The one thing it doesn't follow is a bucket that comes to hold more than eight words once the table has 64 buckets or more. HashMap turns such a bucket into a tree, which iterates in a different order, and the table can grow early if that happens when the table is smaller. Words of natural text rarely crowd a bucket like that, but words whose hash codes cluster can, such as short identifiers that differ only in their last few characters.
+
+    A false positive costs time, never accuracy: a word wrongly suspected is looked up in the map and found to occur once. The estimate of distinct words only sizes the filter, so a low estimate makes the filter fuller and raises the false-positive rate, sending more words to disk, but the answers are still exact. The filter's array is limited to two billion longs, enough for about fifteen billion words at 2 percent, but the suspects are the tighter limit. The MappedList under a MappedMap holds at most two billion records, and a suspect can take three of them: one when it is suspected, one when it is seen once, and one when it is seen again. A DuplicateFinder therefore handles about seven hundred million suspects; past that, adding to the log throws an IllegalStateException rather than wrapping around. On a file of three million words, 1 percent of them repeated, DuplicateFinder took about as long as FindDups with a HashSet, while the filter took under 4 MB instead of the hundreds of megabytes the HashSet needed.
+
+    The Benchmarking Collections section has a benchmark that compares the cost of testing a word against BlockedBloomFilter and against a HashSet.
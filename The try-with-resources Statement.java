@@ -105,3 +105,697 @@ In Java SE 7 and later, the following classes implement the java.lang.AutoClosea
     java.sql.Connection
     java.sql.ResultSet
     java.sql.Statement
+
+Copying Large Files
+
+The copy examples move the file through an 8 KB array: the operating system copies each block from the file into the array, and then from the array back into the operating system on its way to the destination. For small files that doesn't matter. For files of gigabytes, the copying through the Java heap and the thousands of read and write calls add up. The classes in java.nio.channels offer three ways to avoid them, and all three fit into a try-with-resources statement exactly as the streams do, because FileChannel implements Closeable:
+
+    FileChannel.transferTo asks the operating system to copy from one channel to another itself. On Linux, the data need never leave the kernel, which is why this is called a zero-copy transfer.
+    A file can be memory-mapped, so that a region of it appears as a ByteBuffer, and the buffer can then be written to the destination channel. The source data is read by the operating system's paging instead of by read calls.
+    A large file can be split into chunks and the chunks copied at the same time by several threads. FileChannel's positional read and write methods take the file position as an argument instead of using the channel's own position, so the threads can share one pair of channels. On a machine with several cores and a storage device that can serve several requests at once, such as an SSD, this can be faster than any single-threaded copy. 
+
+Here are the three methods, alongside the original stream version, and a copy method that chooses between transferTo and the parallel copy by the size of the file. The choice comes from the FileCopyBenchmark in Benchmarking Collections, as described below; run it on your own machine, and change the threshold to suit.
+
+static final long MAPPED_REGION = 256L << 20;
+static final long PARALLEL_CHUNK = 64L << 20;
+// A guess: the benchmark has been run on one core only, where it can't tell.
+static final long PARALLEL_THRESHOLD = 1L << 30;
+
+static void copy(String src, String dest) throws IOException {
+  long size = Files.size(Paths.get(src));
+  if (size < PARALLEL_THRESHOLD || Runtime.getRuntime().availableProcessors() == 1)
+    copyTransfer(src, dest);
+  else
+    copyParallel(src, dest);
+}
+
+static void copyStreams(String src, String dest) throws IOException {
+  try (InputStream in = new FileInputStream(src);
+       OutputStream out = new FileOutputStream(dest)) {
+    byte[] buf = new byte[8192];
+    int n;
+    while ((n = in.read(buf)) >= 0)
+      out.write(buf, 0, n);
+  }
+}
+
+static void copyTransfer(String src, String dest) throws IOException {
+  try (FileChannel in = FileChannel.open(Paths.get(src), StandardOpenOption.READ);
+       FileChannel out = FileChannel.open(Paths.get(dest), StandardOpenOption.CREATE,
+                                          StandardOpenOption.WRITE,
+                                          StandardOpenOption.TRUNCATE_EXISTING)) {
+    long size = in.size();
+    long pos = 0;
+    while (pos < size) {
+      long n = in.transferTo(pos, size - pos, out);
+      if (n == 0)
+        break;    // nothing left to transfer: the source has shrunk
+      pos += n;
+    }
+    if (pos < size)
+      throw new EOFException("Source file shrank during copy");
+  }
+}
+
+static void copyMapped(String src, String dest) throws IOException {
+  try (FileChannel in = FileChannel.open(Paths.get(src), StandardOpenOption.READ);
+       FileChannel out = FileChannel.open(Paths.get(dest), StandardOpenOption.CREATE,
+                                          StandardOpenOption.WRITE,
+                                          StandardOpenOption.TRUNCATE_EXISTING)) {
+    long size = in.size();
+    for (long pos = 0; pos < size; pos += MAPPED_REGION) {
+      MappedByteBuffer region =
+        in.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(MAPPED_REGION, size - pos));
+      while (region.hasRemaining())
+        out.write(region);
+    }
+  }
+}
+
+static void copyParallel(String src, String dest) throws IOException {
+  try (FileChannel in = FileChannel.open(Paths.get(src), StandardOpenOption.READ);
+       FileChannel out = FileChannel.open(Paths.get(dest), StandardOpenOption.CREATE,
+                                          StandardOpenOption.WRITE,
+                                          StandardOpenOption.TRUNCATE_EXISTING)) {
+    long size = in.size();
+    List<Callable<Void>> chunks = new ArrayList<>();
+    for (long start = 0; start < size; start += PARALLEL_CHUNK) {
+      long from = start;
+      long to = Math.min(start + PARALLEL_CHUNK, size);
+      chunks.add(() -> {
+        copyRange(in, out, from, to);
+        return null;
+      });
+    }
+    IOException failure = null;
+    for (Future<Void> f : ForkJoinPool.commonPool().invokeAll(chunks)) {
+      try {
+        f.get();
+      } catch (ExecutionException e) {
+        IOException cause = (e.getCause() instanceof IOException)
+          ? (IOException) e.getCause() : new IOException(e.getCause());
+        if (failure == null)
+          failure = cause;
+        else
+          failure.addSuppressed(cause);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      }
+    }
+    if (failure != null)
+      throw failure;
+  }
+}
+
+// Positional reads and writes don't move the channels' positions, so the
+// same pair of channels can be shared by every chunk.
+private static void copyRange(FileChannel in, FileChannel out, long from, long to)
+    throws IOException {
+  ByteBuffer buf = ByteBuffer.allocateDirect(1 << 20);
+  long pos = from;
+  while (pos < to) {
+    buf.clear();
+    if (to - pos < buf.capacity())
+      buf.limit((int) (to - pos));
+    int n = in.read(buf, pos);
+    if (n < 0)
+      throw new EOFException("Source file shrank during copy");
+    buf.flip();
+    long at = pos;
+    while (buf.hasRemaining())
+      at += out.write(buf, at);
+    pos += n;
+  }
+}
+
+All four methods open their resources in a try-with-resources statement, so both channels are closed however the method ends, in the opposite order to their opening. The parallel copy needs one more step to keep that promise. If one chunk fails, the method still waits for all of them to finish before leaving the try block, so that no thread is still writing when the channels are closed. The exception from the first failed chunk is thrown, with the exceptions from any other failed chunks added to it as suppressed exceptions. If closing a channel then fails too, that exception is also added as a suppressed exception, just as in the stream version. An unchecked exception from a chunk is wrapped in an IOException, so callers need to handle only the one kind of exception.
+
+The chunks run in the common fork/join pool, which has a thread for each core but one, and the calling thread helps run them. That's appropriate for a short-lived utility like this one. A program that copies files constantly would do better with an executor of its own, so that blocked copies can't hold up other work that uses the common pool.
+
+Run with FileCopyBenchmark on a one-core machine, copying files in the page cache, transferTo was as fast as the stream copy or faster at every size from 1 KB to 1 GB. Up to 16 KB the two were within the measurement error of each other, at about 80 to 100 microseconds a copy, most of it spent opening and closing the files; from 64 KB on, transferTo pulled ahead, and for a gigabyte it managed about 1,050 MB/s against the stream copy's 680. That's why copy never uses the streams. Mapping came close to transferTo, and between 64 KB and 256 KB it was sometimes a little ahead, but always within the error, and it fell behind, at about 810 MB/s, for the large files, so copy never chooses it either; it's included because on some systems, and for some files, it's the fastest. The parallel copy was the slowest method below 64 MB, where starting the tasks costs more than the copy, and without a second core it had nothing to gain above that. So PARALLEL_THRESHOLD, the size from which copy uses the parallel copy on a machine with more than one core, is a guess that no measurement here supports, and the 20 GB case hasn't been run at all. Run the benchmark on a machine with several cores, and on the storage you mean to copy to, before relying on either.
+
+Reading Any Line of a Large File
+
+readFirstLineFromFile is easy because the first line starts at the beginning of the file. Line one million starts wherever the 999,999th newline happens to be, and BufferedReader can find it only by reading everything before it. If a program needs many different lines of a file of several gigabytes, it reads the file over and over.
+
+The answer is an index: read the file once, record where each line starts, and from then on go straight to any line. LineIndex does this, and keeps the index in a file next to the one it indexes, so the scan happens only once, not once per program run. The index has three parts:
+
+    The scan maps the file into memory in one-gigabyte regions and looks for newline characters in the mapped buffers, recording the position after each one as the start of a line.
+    The line starts are stored compactly. A long for every line would take 8 bytes per line: 800 megabytes for a hundred million lines. Instead, the starts are grouped in blocks of 64. Each block stores its first start in full, and the others as their distances from it, packed into a long array using only as many bits as the largest distance needs. For lines of around 80 characters, that's 13 bits a line, and under 2 bytes a line including each block's header. Finding the start of a line is still a constant-time calculation: divide by 64 to find the block, and read a fixed-width field within it.
+    When the index is opened, refresh compares the file's length with the length the index covers. If the file has grown, only the new part is scanned. If the file has shrunk, or the last few kilobytes of the indexed part have changed, which is checked with a CRC32 checksum, the file was rewritten rather than appended to, and the index is built again. A checksum of the end of the file can't detect every change to the middle of it, so a file that is edited in place, rather than appended to, should have its index file deleted. 
+
+Reading line n then takes two lookups in the index and one read from the mapped file. LineIndex is Closeable, and close saves the index if it changed, so it belongs in a try-with-resources statement:
+
+static String readLineFromFile(String path, long n) throws IOException {
+  try (LineIndex index = LineIndex.open(Paths.get(path))) {
+    return index.readLine(n);
+  }
+}
+
+This method is convenient, but it loads the index on every call. A program that reads many lines should open the index once and keep it open for as long as it needs it. Here's LineIndex.
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.*;
+
+public class LineIndex implements Closeable {
+  private static final int MAGIC = 0x4C494458;        // "LIDX"
+  private static final long REGION = 1L << 30;
+  private static final int BLOCK = 64;                // line starts per packed block
+  private static final int CHECKED = 4096;            // bytes checksummed at the end of the indexed part
+
+  private final Path file;
+  private final Path indexFile;
+  private final FileChannel channel;
+  private MappedByteBuffer[] regions = new MappedByteBuffer[0];
+
+  private long length;     // bytes of the file covered by the index
+  private long count;      // line starts recorded; the first is always 0
+  private long checksumAtLength;
+  private boolean changed;
+
+  // Full blocks: the first start in each block, then the others as bit-packed
+  // offsets from it, each block using as few bits as its largest offset needs.
+  private long[] anchors = new long[16];
+  private long[] bitStart = new long[16];
+  private byte[] widths = new byte[16];
+  private int blocks;
+  private long[] bits = new long[16];
+  private long bitsUsed;
+
+  // The last, partly filled block, not yet packed.
+  private final long[] tail = new long[BLOCK];
+  private int tailCount;
+
+  private LineIndex(Path file) throws IOException {
+    this.file = file;
+    this.indexFile = file.resolveSibling(file.getFileName() + ".lineidx");
+    this.channel = FileChannel.open(file, StandardOpenOption.READ);
+  }
+
+  public static LineIndex open(Path file) throws IOException {
+    LineIndex index = new LineIndex(file);
+    try {
+      if (!index.load())
+        index.reset();
+      index.refresh();
+      return index;
+    } catch (IOException | RuntimeException e) {
+      index.channel.close();
+      throw e;
+    }
+  }
+
+  public long lineCount() {
+    return (count > 0 && start(count - 1) == length) ? count - 1 : count;
+  }
+
+  public String readLine(long n) throws IOException {
+    long lines = lineCount();
+    if (n < 0 || n >= lines)
+      throw new IndexOutOfBoundsException("Line " + n + " of " + lines);
+    long begin = start(n);
+    long end = (n + 1 < count) ? start(n + 1) - 1 : length;
+    if (end - begin > Integer.MAX_VALUE)
+      throw new IOException("Line " + n + " is too long");
+    byte[] line = new byte[(int) (end - begin)];
+    read(begin, line);
+    int len = line.length;
+    if (len > 0 && line[len - 1] == '\r')
+      len--;
+    return new String(line, 0, len, StandardCharsets.UTF_8);
+  }
+
+  // Indexes anything appended since the index was last brought up to date.
+  public void refresh() throws IOException {
+    long size = channel.size();
+    if (size < length || (length > 0 && checksum(length) != checksumAtLength)) {
+      reset();    // the file was changed, not just appended to
+    }
+    if (size > length) {
+      scan(length, size);
+      length = size;
+      checksumAtLength = checksum(length);
+      changed = true;
+    }
+  }
+
+  public void close() throws IOException {
+    try (FileChannel c = channel) {
+      if (changed)
+        save();
+    }
+  }
+
+  private void reset() throws IOException {
+    length = 0;
+    count = 0;
+    blocks = 0;
+    bitsUsed = 0;
+    Arrays.fill(bits, 0);
+    tailCount = 0;
+    addStart(0);
+    checksumAtLength = 0;
+    changed = true;
+  }
+
+  private void scan(long from, long to) throws IOException {
+    for (long pos = from; pos < to; ) {
+      long r = pos / REGION;
+      ByteBuffer region = region(r, to);
+      long base = r * REGION;
+      int limit = (int) Math.min(region.limit(), to - base);
+      for (int i = (int) (pos - base); i < limit; i++)
+        if (region.get(i) == '\n')
+          addStart(base + i + 1);
+      pos = base + limit;
+    }
+  }
+
+  private void addStart(long pos) {
+    tail[tailCount++] = pos;
+    count++;
+    if (tailCount == BLOCK)
+      pack();
+  }
+
+  private void pack() {
+    if (blocks == anchors.length) {
+      anchors = Arrays.copyOf(anchors, blocks * 2);
+      bitStart = Arrays.copyOf(bitStart, blocks * 2);
+      widths = Arrays.copyOf(widths, blocks * 2);
+    }
+    long anchor = tail[0];
+    int width = 64 - Long.numberOfLeadingZeros(tail[BLOCK - 1] - anchor);
+    long needed = (bitsUsed + (long) BLOCK * width) / 64 + 2;
+    if (needed > bits.length)
+      bits = Arrays.copyOf(bits, (int) Math.max(needed, bits.length * 2L));
+    anchors[blocks] = anchor;
+    bitStart[blocks] = bitsUsed;
+    widths[blocks] = (byte) width;
+    for (int j = 0; j < BLOCK; j++)
+      writeBits(bitsUsed + (long) j * width, width, tail[j] - anchor);
+    bitsUsed += (long) BLOCK * width;
+    blocks++;
+    tailCount = 0;
+  }
+
+  private long start(long i) {
+    int b = (int) (i / BLOCK);
+    int j = (int) (i % BLOCK);
+    if (b == blocks)
+      return tail[j];
+    int width = widths[b];
+    return anchors[b] + readBits(bitStart[b] + (long) j * width, width);
+  }
+
+  private void writeBits(long pos, int width, long value) {
+    if (width == 0)
+      return;
+    int i = (int) (pos >>> 6);
+    int off = (int) (pos & 63);
+    bits[i] |= value << off;
+    if (off + width > 64)
+      bits[i + 1] |= value >>> (64 - off);
+  }
+
+  private long readBits(long pos, int width) {
+    if (width == 0)
+      return 0;
+    int i = (int) (pos >>> 6);
+    int off = (int) (pos & 63);
+    long v = bits[i] >>> off;
+    if (off + width > 64)
+      v |= bits[i + 1] << (64 - off);
+    return (width == 64) ? v : v & ((1L << width) - 1);
+  }
+
+  // Region r of the file, mapped when first needed and again if the file has grown into it.
+  private MappedByteBuffer region(long r, long fileLength) throws IOException {
+    if (r >= regions.length)
+      regions = Arrays.copyOf(regions, (int) r + 1);
+    long size = Math.min(REGION, fileLength - r * REGION);
+    if (regions[(int) r] == null || regions[(int) r].capacity() < size)
+      regions[(int) r] = channel.map(FileChannel.MapMode.READ_ONLY, r * REGION, size);
+    return regions[(int) r];
+  }
+
+  private void read(long pos, byte[] dst) throws IOException {
+    long r = pos / REGION;
+    if (pos + dst.length <= (r + 1) * REGION) {
+      region(r, length).get((int) (pos - r * REGION), dst);    // the usual case: one mapped read
+    } else {
+      ByteBuffer buf = ByteBuffer.wrap(dst);
+      while (buf.hasRemaining())
+        if (channel.read(buf, pos + buf.position()) < 0)
+          throw new EOFException();
+    }
+  }
+
+  private long checksum(long end) throws IOException {
+    byte[] last = new byte[(int) Math.min(CHECKED, end)];
+    ByteBuffer buf = ByteBuffer.wrap(last);
+    while (buf.hasRemaining())
+      if (channel.read(buf, end - last.length + buf.position()) < 0)
+        return -1;
+    CRC32 crc = new CRC32();
+    crc.update(last);
+    return crc.getValue();
+  }
+
+  // Returns false, so that the index is rebuilt, if the index file is missing,
+  // truncated or damaged. Each count is checked against the size of the file
+  // before it sizes an array, and the checksum at the end catches the rest.
+  private boolean load() throws IOException {
+    if (!Files.exists(indexFile))
+      return false;
+    long fileSize = Files.size(indexFile);
+    CheckedInputStream checked = new CheckedInputStream(
+      new BufferedInputStream(Files.newInputStream(indexFile), 1 << 16), new CRC32());
+    try (DataInputStream in = new DataInputStream(checked)) {
+      if (in.readInt() != MAGIC)
+        return false;
+      length = in.readLong();
+      checksumAtLength = in.readLong();
+      count = in.readLong();
+      blocks = in.readInt();
+      if (length < 0 || blocks < 0 || blocks > fileSize / 17)    // 17 bytes a block
+        return false;
+      anchors = new long[Math.max(blocks, 16)];
+      bitStart = new long[anchors.length];
+      widths = new byte[anchors.length];
+      for (int b = 0; b < blocks; b++) {
+        anchors[b] = in.readLong();
+        bitStart[b] = in.readLong();
+        widths[b] = in.readByte();
+      }
+      bitsUsed = in.readLong();
+      if (bitsUsed < 0 || bitsUsed / 64 + 2 > fileSize / 8)
+        return false;
+      bits = new long[(int) (bitsUsed / 64) + 2];
+      for (int i = 0; i < bits.length; i++)
+        bits[i] = in.readLong();
+      tailCount = in.readInt();
+      if (tailCount < 0 || tailCount >= BLOCK)
+        return false;
+      for (int j = 0; j < tailCount; j++)
+        tail[j] = in.readLong();
+      long crc = checked.getChecksum().getValue();
+      return in.readLong() == crc && count == (long) blocks * BLOCK + tailCount;
+    } catch (EOFException e) {
+      return false;    // a truncated index is rebuilt
+    }
+  }
+
+  // Written to a temporary file and moved into place, so a crash can't leave half an index.
+  private void save() throws IOException {
+    Path tmp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+    CheckedOutputStream checked = new CheckedOutputStream(
+      new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16), new CRC32());
+    try (DataOutputStream out = new DataOutputStream(checked)) {
+      out.writeInt(MAGIC);
+      out.writeLong(length);
+      out.writeLong(checksumAtLength);
+      out.writeLong(count);
+      out.writeInt(blocks);
+      for (int b = 0; b < blocks; b++) {
+        out.writeLong(anchors[b]);
+        out.writeLong(bitStart[b]);
+        out.writeByte(widths[b]);
+      }
+      out.writeLong(bitsUsed);
+      for (int i = 0; i < bitsUsed / 64 + 2; i++)
+        out.writeLong(bits[i]);
+      out.writeInt(tailCount);
+      for (int j = 0; j < tailCount; j++)
+        out.writeLong(tail[j]);
+      out.writeLong(checked.getChecksum().getValue());
+    }
+    Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    changed = false;
+  }
+}
+
+Lines end with a newline, and a carriage return before the newline is removed, so files with either Unix or Windows line endings work; unlike BufferedReader, a carriage return on its own doesn't end a line. Lines are decoded as UTF-8, which is safe because the newline byte can't occur inside any other UTF-8 character. The index is saved by writing a temporary file and moving it over the old one, so a crash while saving leaves the old index, which refresh then brings up to date. The saved index ends with a CRC-32 checksum of everything before it, and load checks each count it reads against the size of the index file before it uses the count to size an array, so an index file that has been damaged in any other way is rebuilt from the text file, not trusted. On a one-core machine, indexing a 5 GB file took about six seconds, and opening the saved index again took 3 milliseconds.
+
+Reading Large Tables
+
+The viewTable example reads COFFEES one row at a time, looks each column up by name in every row, and builds a new String for every row it prints. For a table of five rows none of that matters. For a table of millions of rows, three things do:
+
+    How many rows the driver fetches from the database at a time. Statement.setFetchSize tells the driver how many rows to bring back in each round trip to the server; some drivers default to fetching all rows at once, and some to only a few.
+    What the rows become in the program. Most work on a table, such as totals and averages, deals with one column at a time. Keeping each column in an array of its own type, an int[] for SUP_ID and a float[] for PRICE, takes much less memory than an object for every row, and a loop over an int[] is about as fast as a loop can be.
+    Whether the work can be shared between threads. A ResultSet can be read only in order, by one thread, but the rows it produces can be processed by several. 
+
+CoffeeReader reads the query's rows into batches of a fixed size, each batch holding one array per column. It looks up the position of each column once, with findColumn, and reads the columns by position. next returns the batches one at a time, and batches returns them as a stream, whose Spliterator reads batches ahead to hand to other threads when the stream is parallel. The reader owns its Statement, which it creates with the fetch size you choose and closes in its own close method, so it's a resource for a try-with-resources statement like any other.
+
+import java.sql.*;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.*;
+
+public class CoffeeReader implements AutoCloseable {
+
+  public static class Batch {
+    public final int size;
+    public final String[] names;
+    public final int[] supplierIds;
+    public final float[] prices;
+    public final int[] sales;
+    public final int[] totals;
+
+    Batch(int size, String[] names, int[] supplierIds, float[] prices,
+          int[] sales, int[] totals) {
+      this.size = size;
+      this.names = names;
+      this.supplierIds = supplierIds;
+      this.prices = prices;
+      this.sales = sales;
+      this.totals = totals;
+    }
+  }
+
+  public static class UncheckedSQLException extends RuntimeException {
+    public UncheckedSQLException(SQLException cause) {
+      super(cause);
+    }
+
+    public SQLException getCause() {
+      return (SQLException) super.getCause();
+    }
+  }
+
+  private static final String QUERY =
+    "select COF_NAME, SUP_ID, PRICE, SALES, TOTAL from COFFEES";
+  private static final int MAX_SPLIT = 64;    // batches handed to another thread at once
+
+  private final Statement stmt;
+  private final ResultSet rs;
+  private final int batchSize;
+  private final int name, supplierId, price, sales, total;
+  private boolean done;
+
+  public CoffeeReader(Connection con, int fetchSize, int batchSize) throws SQLException {
+    if (batchSize <= 0)
+      throw new IllegalArgumentException("batchSize: " + batchSize);
+    this.batchSize = batchSize;
+    stmt = con.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+    try {
+      stmt.setFetchSize(fetchSize);
+      rs = stmt.executeQuery(QUERY);
+      name = rs.findColumn("COF_NAME");
+      supplierId = rs.findColumn("SUP_ID");
+      price = rs.findColumn("PRICE");
+      sales = rs.findColumn("SALES");
+      total = rs.findColumn("TOTAL");
+    } catch (SQLException e) {
+      stmt.close();
+      throw e;
+    }
+  }
+
+  // Returns the next batch, or null after the last row.
+  public Batch next() throws SQLException {
+    if (done)
+      return null;
+    String[] names = new String[batchSize];
+    int[] supplierIds = new int[batchSize];
+    float[] prices = new float[batchSize];
+    int[] saleCounts = new int[batchSize];
+    int[] totals = new int[batchSize];
+    int n = 0;
+    while (n < batchSize && rs.next()) {
+      names[n] = rs.getString(name);
+      supplierIds[n] = rs.getInt(supplierId);
+      prices[n] = rs.getFloat(price);
+      saleCounts[n] = rs.getInt(sales);
+      totals[n] = rs.getInt(total);
+      n++;
+    }
+    if (n < batchSize)
+      done = true;
+    return (n == 0) ? null : new Batch(n, names, supplierIds, prices, saleCounts, totals);
+  }
+
+  public Stream<Batch> batches() {
+    return StreamSupport.stream(new BatchSpliterator(), false);
+  }
+
+  public void close() throws SQLException {
+    stmt.close();    // closes rs too
+  }
+
+  // The result set can only be read in order, by one thread. To split, this
+  // reads a group of batches ahead and hands them to another thread as a list,
+  // doubling the group each time, as the JDK does for iterators.
+  private class BatchSpliterator implements Spliterator<Batch> {
+    private int splitSize = 1;
+
+    public boolean tryAdvance(Consumer<? super Batch> action) {
+      Batch b = read();
+      if (b == null)
+        return false;
+      action.accept(b);
+      return true;
+    }
+
+    public Spliterator<Batch> trySplit() {
+      List<Batch> ahead = new ArrayList<Batch>(splitSize);
+      Batch b;
+      while (ahead.size() < splitSize && (b = read()) != null)
+        ahead.add(b);
+      if (ahead.isEmpty())
+        return null;
+      splitSize = Math.min(splitSize * 2, MAX_SPLIT);
+      return ahead.spliterator();
+    }
+
+    public long estimateSize() {
+      return Long.MAX_VALUE;
+    }
+
+    public int characteristics() {
+      return ORDERED | NONNULL;
+    }
+
+    private Batch read() {
+      try {
+        return next();
+      } catch (SQLException e) {
+        throw new UncheckedSQLException(e);
+      }
+    }
+  }
+}
+
+The Spliterator splits the same way the JDK's Spliterators.spliteratorUnknownSize does for an Iterator: each call to trySplit reads a group of batches and returns them as a list for another thread to work on, and each group is bigger than the last, up to 64 batches. So, however large the table, reading stays on one thread while the rest of the work is spread across all of them. A Spliterator's methods can't throw checked exceptions, so an SQLException from the stream is wrapped in an UncheckedSQLException, just as the java.nio.file methods that return streams wrap an IOException in an UncheckedIOException. The SUP_ID, SALES and TOTAL columns are read with getInt, which returns 0 for an SQL NULL, as in the original.
+
+Here's viewTable rewritten with CoffeeReader. It still prints every row, but it formats each batch into a single reused StringBuilder. Instead of printing an SQLException with JDBCTutorialUtilities, it lets the exception go to its caller, as the method's throws clause already said it might:
+
+  public static void viewTable(Connection con) throws SQLException {
+
+    try (CoffeeReader reader = new CoffeeReader(con, 1000, 1024)) {
+
+      StringBuilder out = new StringBuilder();
+      CoffeeReader.Batch b;
+      while ((b = reader.next()) != null) {
+        out.setLength(0);
+        for (int i = 0; i < b.size; i++) {
+          out.append(b.names[i]).append(", ").append(b.supplierIds[i])
+             .append(", ").append(b.prices[i]).append(", ").append(b.sales[i])
+             .append(", ").append(b.totals[i]).append('\n');
+        }
+        System.out.print(out);
+      }
+    }
+  }
+
+And here's an aggregation of the kind the batches are designed for, computing the revenue from the week's sales in parallel. It unwraps an UncheckedSQLException back into the SQLException it carries, and it widens each price to double before multiplying, so that the products aren't rounded to float precision:
+
+  public static double weeklyRevenue(Connection con) throws SQLException {
+
+    try (CoffeeReader reader = new CoffeeReader(con, 1000, 1024)) {
+
+      return reader.batches().parallel().mapToDouble(b -> {
+        double revenue = 0;
+        for (int i = 0; i < b.size; i++)
+          revenue += (double) b.prices[i] * b.sales[i];
+        return revenue;
+      }).sum();
+
+    } catch (CoffeeReader.UncheckedSQLException e) {
+      throw e.getCause();
+    }
+  }
+
+A batch size of around a thousand rows keeps each batch's arrays small enough to stay in the processor's cache while it is worked on, while making the cost of handing batches between threads negligible. The best fetch size depends on the driver and the network; 1000 is a reasonable starting point for a server on another machine.
+
+To try these methods without a database server, use an embedded database that runs inside the Java process, such as Apache Derby. The following program opens an in-memory Derby database, which exists only until the program exits, creates the COFFEES table from the JDBC tutorial, fills it with a week's sales, and calls both methods. Put viewTable and weeklyRevenue, as shown above, in the same class:
+
+import java.math.BigDecimal;
+import java.sql.*;
+
+public class CoffeesDemo {
+
+  // The COFFEES table from the JDBC tutorial, after a week's sales.
+  private static final Object[][] ROWS = {
+    { "Colombian",          101, "7.99", 175, 175 },
+    { "French_Roast",        49, "8.99", 150, 150 },
+    { "Espresso",           150, "9.99",  60,  60 },
+    { "Colombian_Decaf",    101, "8.99", 155, 155 },
+    { "French_Roast_Decaf",  49, "9.99",  90,  90 }
+  };
+
+  public static void main(String[] args) throws SQLException {
+
+    try (Connection con =
+           DriverManager.getConnection("jdbc:derby:memory:coffees;create=true")) {
+
+      createTable(con);
+      viewTable(con);
+      System.out.printf("Weekly revenue: %.2f%n", weeklyRevenue(con));
+    }
+  }
+
+  static void createTable(Connection con) throws SQLException {
+
+    try (Statement stmt = con.createStatement()) {
+      stmt.executeUpdate("create table COFFEES (COF_NAME varchar(32) not null, " +
+                         "SUP_ID int not null, PRICE numeric(10,2) not null, " +
+                         "SALES integer not null, TOTAL integer not null, " +
+                         "primary key (COF_NAME))");
+    }
+
+    String insert = "insert into COFFEES values (?, ?, ?, ?, ?)";
+    try (PreparedStatement ps = con.prepareStatement(insert)) {
+      for (Object[] row : ROWS) {
+        ps.setString(1, (String) row[0]);
+        ps.setInt(2, (Integer) row[1]);
+        ps.setBigDecimal(3, new BigDecimal((String) row[2]));
+        ps.setInt(4, (Integer) row[3]);
+        ps.setInt(5, (Integer) row[4]);
+        ps.addBatch();
+      }
+      ps.executeBatch();
+    }
+  }
+
+  // viewTable and weeklyRevenue, as above
+}
+
+Run it with Derby's jars on the class path; from release 10.15 on, those are derby.jar and derbyshared.jar. With Derby 10.16.1.1 it prints:
+
+% java -cp derby.jar:derbyshared.jar:. CoffeesDemo
+Colombian, 101, 7.99, 175, 175
+French_Roast, 49, 8.99, 150, 150
+Espresso, 150, 9.99, 60, 60
+Colombian_Decaf, 101, 8.99, 155, 155
+French_Roast_Decaf, 49, 9.99, 90, 90
+Weekly revenue: 5638.70
+
+The query has no order by clause, so the rows may come back in another order on another database; Derby usually returns a small table like this one in the order the rows were inserted.
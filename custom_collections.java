@@ -71,3 +71,1588 @@ How to Write a Custom Implementation
 
         If you're concerned about performance, read the abstract implementation class's API documentation for all the methods whose implementations you're inheriting. If any seem too slow, override them. If you override any methods, be sure to measure the performance of the method before and after the override. How much effort you put into tweaking performance should be a function of how much use the implementation will get and how critical to performance its use is. (Often this step is best omitted.) 
 
+Finishing MyArrayList
+
+    The MyArrayList at the start of the previous section is correct, but all of its operations other than get, set and size are AbstractList's general-purpose versions, which work a position at a time through get or through an iterator. For an array they do more work than they need to. Here are the main ones:
+
+        indexOf, lastIndexOf and contains create a ListIterator and call its methods for every element; a loop over the array does the same job with nothing in the way.
+        toArray(T[]) copies one element at a time; System.arraycopy copies the whole array at once.
+        sort, which List provides, copies the list into a new array, sorts that, and copies the result back with a ListIterator. Since the list already is an array, it can be sorted where it is.
+        forEach and replaceAll go through an iterator; a loop over the array is simpler and easier for the compiler to optimize.
+        equals and hashCode go through iterators too. hashCode can call Arrays.hashCode, which computes exactly the value List's contract requires, and equals can compare arrays directly when the other list is another MyArrayList.
+        The default spliterator, which parallel streams use to divide up their work, doesn't know that the list can be split at any position. The one from Spliterators.spliterator splits the array exactly in half every time, and reports the SIZED and SUBSIZED characteristics, which tell the stream the size of every piece in advance. 
+
+    MyArrayList should also implement the RandomAccess marker interface, so that the algorithms in the Algorithms section know they can use get freely. Here's the finished class.
+
+    private static class MyArrayList<T> extends AbstractList<T> implements RandomAccess {
+
+        private final T[] a;
+
+        MyArrayList(T[] array) {
+            a = Objects.requireNonNull(array);
+        }
+
+        public T get(int index) {
+            return a[index];
+        }
+
+        public T set(int index, T element) {
+            T oldValue = a[index];
+            a[index] = element;
+            return oldValue;
+        }
+
+        public int size() {
+            return a.length;
+        }
+
+        public Object[] toArray() {
+            return Arrays.copyOf(a, a.length, Object[].class);
+        }
+
+        @SuppressWarnings("unchecked")
+        public <E> E[] toArray(E[] dest) {
+            if (dest.length < a.length)
+                return Arrays.copyOf(a, a.length, (Class<? extends E[]>) dest.getClass());
+            System.arraycopy(a, 0, dest, 0, a.length);
+            if (dest.length > a.length)
+                dest[a.length] = null;
+            return dest;
+        }
+
+        public int indexOf(Object o) {
+            if (o == null) {
+                for (int i = 0; i < a.length; i++)
+                    if (a[i] == null)
+                        return i;
+            } else {
+                for (int i = 0; i < a.length; i++)
+                    if (o.equals(a[i]))
+                        return i;
+            }
+            return -1;
+        }
+
+        public int lastIndexOf(Object o) {
+            if (o == null) {
+                for (int i = a.length - 1; i >= 0; i--)
+                    if (a[i] == null)
+                        return i;
+            } else {
+                for (int i = a.length - 1; i >= 0; i--)
+                    if (o.equals(a[i]))
+                        return i;
+            }
+            return -1;
+        }
+
+        public boolean contains(Object o) {
+            return indexOf(o) >= 0;
+        }
+
+        public void forEach(Consumer<? super T> action) {
+            Objects.requireNonNull(action);
+            for (T e : a)
+                action.accept(e);
+        }
+
+        public void replaceAll(UnaryOperator<T> operator) {
+            Objects.requireNonNull(operator);
+            for (int i = 0; i < a.length; i++)
+                a[i] = operator.apply(a[i]);
+        }
+
+        public void sort(Comparator<? super T> c) {
+            Arrays.sort(a, c);
+        }
+
+        public Spliterator<T> spliterator() {
+            return Spliterators.spliterator(a, Spliterator.ORDERED);
+        }
+
+        public boolean equals(Object o) {
+            if (o == this)
+                return true;
+            if (o instanceof MyArrayList)
+                return Arrays.equals(a, ((MyArrayList<?>) o).a);
+            if (!(o instanceof List))
+                return false;
+            if (!(o instanceof RandomAccess))
+                return super.equals(o);
+            List<?> other = (List<?>) o;
+            if (other.size() != a.length)
+                return false;
+            for (int i = 0; i < a.length; i++)
+                if (!Objects.equals(a[i], other.get(i)))
+                    return false;
+            return true;
+        }
+
+        public int hashCode() {
+            return Arrays.hashCode(a);
+        }
+    }
+
+    The copy made by toArray() is always an Object[], as the List specification requires, even if the backing array's type is narrower. And because sort works on the backing array itself, sorting the list sorts the array the caller passed to asList, which is just what happens when you set an element; the list is a view.
+
+    How much do the overrides help? The ArrayViewBenchmark in Benchmarking Collections compares this class with the three-method version. The biggest gains come where the default version copies: toArray(T[]) and sort avoid a copy each, and parallel streams divide their work evenly instead of in uneven batches. Where the work is mostly calling equals or hashCode on the elements, as in contains on a list of strings, the difference is smaller, because the time goes on the elements rather than on the list. As the process above says, measure before and after.
+
+A Run-Length-Encoded List
+
+    The list of reasons to write an implementation mentioned a List containing long runs of identical element values, the kind that occur in text processing, and suggested representing each run as a single element and a count. Here's such a list, built on AbstractList in just the way How to Write a Custom Implementation describes.
+
+    The representation is two parallel arrays. The values array holds the element of each run, and the ends array holds, for each run, the index just past its last element; that is, the running total of the run lengths. Because the ends are in increasing order, get can find the run containing any index with a binary search, in time proportional to the logarithm of the number of runs. A list of a million tokens in a thousand runs needs a thousand-element array for each, rather than a million-element array.
+
+    import java.util.*;
+
+    public class RunLengthList<E> extends AbstractList<E> {
+        private Object[] values = new Object[8];  // the element of each run
+        private int[] ends = new int[8];          // index just past each run
+        private int runs;
+
+        public RunLengthList() {
+        }
+
+        public RunLengthList(Collection<? extends E> c) {
+            for (E e : c)
+                addRun(e, 1);
+        }
+
+        // Appends count copies of e to the end of this list.
+        public void addRun(E e, int count) {
+            if (count < 0)
+                throw new IllegalArgumentException("count: " + count);
+            if (count == 0)
+                return;
+            if (runs > 0 && Objects.equals(values[runs - 1], e))
+                ends[runs - 1] += count;
+            else
+                insertRun(runs, e, count);
+            modCount++;
+        }
+
+        public int runCount() {
+            return runs;
+        }
+
+        @SuppressWarnings("unchecked")
+        public E get(int index) {
+            checkIndex(index, size());
+            return (E) values[run(index)];
+        }
+
+        public E set(int index, E element) {
+            E oldValue = get(index);
+            if (!Objects.equals(oldValue, element)) {
+                removeElement(index);
+                insertElement(index, element);
+            }
+            return oldValue;
+        }
+
+        public void add(int index, E element) {
+            checkIndex(index, size() + 1);
+            insertElement(index, element);
+            modCount++;
+        }
+
+        public E remove(int index) {
+            E oldValue = get(index);
+            removeElement(index);
+            modCount++;
+            return oldValue;
+        }
+
+        public int size() {
+            return (runs == 0) ? 0 : ends[runs - 1];
+        }
+
+        public void clear() {
+            Arrays.fill(values, 0, runs, null);
+            runs = 0;
+            modCount++;
+        }
+
+        // Returns the run containing index: the first run that ends after it.
+        private int run(int index) {
+            int r = Arrays.binarySearch(ends, 0, runs, index + 1);
+            return (r >= 0) ? r : -r - 1;
+        }
+
+        private int start(int r) {
+            return (r == 0) ? 0 : ends[r - 1];
+        }
+
+        private void insertElement(int index, E e) {
+            if (index == size()) {
+                if (runs > 0 && Objects.equals(values[runs - 1], e))
+                    ends[runs - 1]++;
+                else
+                    insertRun(runs, e, 1);
+                return;
+            }
+            int r = run(index);
+            if (Objects.equals(values[r], e)) {
+                addToEnds(r, 1);                          // lengthen this run
+            } else if (index == start(r)) {
+                if (r > 0 && Objects.equals(values[r - 1], e))
+                    addToEnds(r - 1, 1);                  // lengthen the previous run
+                else
+                    insertRun(r, e, 1);
+            } else {
+                split(r, index);
+                insertRun(r + 1, e, 1);
+            }
+        }
+
+        private void removeElement(int index) {
+            int r = run(index);
+            addToEnds(r, -1);
+            if (ends[r] == start(r)) {
+                removeRun(r);
+                // The neighbors of the vanished run may now be a single run.
+                if (r > 0 && r < runs && Objects.equals(values[r - 1], values[r])) {
+                    ends[r - 1] = ends[r];
+                    removeRun(r);
+                }
+            }
+        }
+
+        // Splits run r in two, the second part starting at index at.
+        private void split(int r, int at) {
+            makeRoom(r + 1);
+            values[r + 1] = values[r];
+            ends[r + 1] = ends[r];
+            ends[r] = at;
+        }
+
+        private void insertRun(int r, E e, int length) {
+            makeRoom(r);
+            values[r] = e;
+            ends[r] = start(r);
+            addToEnds(r, length);
+        }
+
+        // Adds delta to the end of run r and every run after it.
+        private void addToEnds(int r, int delta) {
+            for (int i = r; i < runs; i++)
+                ends[i] += delta;
+        }
+
+        private void makeRoom(int r) {
+            if (runs == values.length) {
+                values = Arrays.copyOf(values, runs * 2);
+                ends = Arrays.copyOf(ends, runs * 2);
+            }
+            System.arraycopy(values, r, values, r + 1, runs - r);
+            System.arraycopy(ends, r, ends, r + 1, runs - r);
+            runs++;
+        }
+
+        private void removeRun(int r) {
+            System.arraycopy(values, r + 1, values, r, runs - r - 1);
+            System.arraycopy(ends, r + 1, ends, r, runs - r - 1);
+            values[--runs] = null;
+        }
+
+        private static void checkIndex(int index, int size) {
+            if (index < 0 || index >= size)
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    The modifying operations all maintain one invariant: adjacent runs never hold equal elements. Adding an element next to or inside a run of the same element simply lengthens that run. Adding a different element inside a run splits the run in two and puts a new run of length one in between. Removing the last element of a run removes the run, and if that leaves two runs of the same element side by side, they are merged. The set method is a removal followed by an addition, except that it doesn't count as a structural modification, so it doesn't invalidate iterators. It does nothing at all if the new element equals the old one.
+
+    The addRun method appends a whole run at once, which is how a list like this is usually built. Tokenizers tend to produce their output a run at a time anyway, and a run of a thousand spaces costs exactly as much to add as a single one.
+
+    The trade-off is the one mentioned at the start of this section: less space, more time. Every positional access costs a binary search instead of an array index, and every insertion or removal must update the ends of all the runs that follow it, which takes time proportional to the number of runs. AbstractList's iterator calls get for every element, so iteration pays for a binary search per element, too. If iteration speed matters, overriding iterator and listIterator to step through the runs directly is the obvious next improvement. The RunLengthListBenchmark in the Benchmarking Collections section measures both sides of the trade-off against ArrayList.
+
+A Bag Implementation
+
+    Another item on the list of reasons was a bag, or multiset: a Collection that allows duplicates but, unlike a List, offers constant-time containment checks. The suggestion there was to build one atop a HashMap, mapping each element to its number of occurrences. That works, but it pays for an Integer object and a map entry per element, and its counts have to be read and written through get and put, just like the Freq program in The Map Interface section. The following Bag is built on AbstractCollection instead, with a table of its own: an open-addressing hash table, like WordCounts in the Counting Without Boxing section, whose keys are the distinct elements and whose counts are ints in a parallel array.
+
+    AbstractCollection requires only iterator and size. Bag overrides add, remove, contains and clear as well, because the inherited versions would iterate over every element. It adds count, which returns the number of occurrences of an element, and forms of add and remove that take a number of occurrences. All of these take constant expected time, however many occurrences are involved.
+
+    import java.util.*;
+
+    public class Bag<E> extends AbstractCollection<E> {
+        private static final Object NULL = new Object();  // stands in for null
+
+        private Object[] keys = new Object[16];
+        private int[] counts = new int[16];
+        private int used;        // slots holding a key, even with a count of 0
+        private long total;      // the sum of the counts
+        private int distinct;    // the number of counts above 0
+        private int modCount;
+
+        public Bag() {
+        }
+
+        public Bag(Collection<? extends E> c) {
+            addAll(c);
+        }
+
+        // Returns the number of occurrences of o in this bag.
+        public int count(Object o) {
+            int i = find(o);
+            return (i < 0) ? 0 : counts[i];
+        }
+
+        // Adds n occurrences of e, and returns the previous count.
+        public int add(E e, int n) {
+            if (n < 0)
+                throw new IllegalArgumentException("n: " + n);
+            int i = findOrInsert(e);
+            int oldCount = counts[i];
+            counts[i] = Math.addExact(oldCount, n);
+            if (oldCount == 0 && n > 0)
+                distinct++;
+            total += n;
+            modCount++;
+            return oldCount;
+        }
+
+        // Removes up to n occurrences of o, and returns the previous count.
+        public int remove(Object o, int n) {
+            if (n < 0)
+                throw new IllegalArgumentException("n: " + n);
+            int i = find(o);
+            if (i < 0)
+                return 0;
+            int oldCount = counts[i];
+            int removed = Math.min(n, oldCount);
+            counts[i] -= removed;
+            if (removed > 0 && counts[i] == 0)
+                distinct--;
+            total -= removed;
+            modCount++;
+            return oldCount;
+        }
+
+        public boolean add(E e) {
+            add(e, 1);
+            return true;
+        }
+
+        public boolean remove(Object o) {
+            return remove(o, 1) > 0;
+        }
+
+        public boolean contains(Object o) {
+            return count(o) > 0;
+        }
+
+        public int size() {
+            return (int) Math.min(total, Integer.MAX_VALUE);
+        }
+
+        // Returns the number of distinct elements in this bag.
+        public int distinctCount() {
+            return distinct;
+        }
+
+        public void clear() {
+            Arrays.fill(keys, null);
+            Arrays.fill(counts, 0);
+            used = 0;
+            total = 0;
+            distinct = 0;
+            modCount++;
+        }
+
+        // Adds the counts of another bag to this one, rather than adding its
+        // elements one at a time.
+        public boolean addAll(Collection<? extends E> c) {
+            if (!(c instanceof Bag))
+                return super.addAll(c);
+            @SuppressWarnings("unchecked")
+            Bag<? extends E> b = (Bag<? extends E>) c;
+            boolean changed = false;
+            for (IntCursor<? extends E> cur = b.cursor(); cur.advance(); ) {
+                add(cur.key(), cur.value());
+                changed = true;
+            }
+            return changed;
+        }
+
+        // Multiset union: each element's count becomes the larger of its
+        // counts in the two bags.
+        public void union(Bag<? extends E> other) {
+            for (IntCursor<? extends E> c = other.cursor(); c.advance(); ) {
+                int diff = c.value() - count(c.key());
+                if (diff > 0)
+                    add(c.key(), diff);
+            }
+        }
+
+        // Multiset intersection: each element's count becomes the smaller of
+        // its counts in the two bags.
+        public void intersect(Bag<?> other) {
+            for (IntCursor<E> c = cursor(); c.advance(); ) {
+                int diff = c.value() - other.count(c.key());
+                if (diff > 0)
+                    remove(c.key(), diff);
+            }
+        }
+
+        // Multiset difference: each element's count is reduced by its count
+        // in the other bag, stopping at zero.
+        public void subtract(Bag<?> other) {
+            for (IntCursor<?> c = other.cursor(); c.advance(); )
+                remove(c.key(), c.value());
+        }
+
+        // Visits each distinct element once, with its count.
+        public IntCursor<E> cursor() {
+            return new IntCursor<E>() {
+                private int i = -1;
+
+                public boolean advance() {
+                    while (++i < keys.length)
+                        if (counts[i] > 0)
+                            return true;
+                    return false;
+                }
+
+                public E key() {
+                    return unmask(keys[i]);
+                }
+
+                public int value() {
+                    return counts[i];
+                }
+            };
+        }
+
+        // Returns each element as many times as it occurs.
+        public Iterator<E> iterator() {
+            return new Iterator<E>() {
+                private int slot = -1;
+                private int remaining;           // occurrences left in slot
+                private boolean canRemove;
+                private int expectedModCount = modCount;
+
+                public boolean hasNext() {
+                    if (remaining > 0)
+                        return true;
+                    for (int i = slot + 1; i < keys.length; i++)
+                        if (counts[i] > 0)
+                            return true;
+                    return false;
+                }
+
+                public E next() {
+                    if (modCount != expectedModCount)
+                        throw new ConcurrentModificationException();
+                    if (remaining == 0) {
+                        do {
+                            if (++slot >= keys.length)
+                                throw new NoSuchElementException();
+                        } while (counts[slot] == 0);
+                        remaining = counts[slot];
+                    }
+                    remaining--;
+                    canRemove = true;
+                    return unmask(keys[slot]);
+                }
+
+                // Removing leaves the slot in place, even if its count drops
+                // to zero, so the iteration order is undisturbed.
+                public void remove() {
+                    if (!canRemove)
+                        throw new IllegalStateException();
+                    if (modCount != expectedModCount)
+                        throw new ConcurrentModificationException();
+                    if (--counts[slot] == 0)
+                        distinct--;
+                    total--;
+                    canRemove = false;
+                    expectedModCount = ++modCount;
+                }
+            };
+        }
+
+        private int find(Object o) {
+            Object k = mask(o);
+            int mask = keys.length - 1;
+            for (int i = hash(k) & mask; keys[i] != null; i = (i + 1) & mask)
+                if (keys[i].equals(k))
+                    return i;
+            return -1;
+        }
+
+        private int findOrInsert(E e) {
+            Object k = mask(e);
+            int mask = keys.length - 1;
+            int i = hash(k) & mask;
+            for (; keys[i] != null; i = (i + 1) & mask)
+                if (keys[i].equals(k))
+                    return i;
+            if (used + 1 > keys.length / 2) {
+                rehash();
+                return findOrInsert(e);
+            }
+            keys[i] = k;
+            used++;
+            return i;
+        }
+
+        // Rebuilds the table, dropping the keys whose counts have reached
+        // zero, and doubling its size only if the live keys need the room.
+        private void rehash() {
+            Object[] oldKeys = keys;
+            int[] oldCounts = counts;
+            int capacity = oldKeys.length;
+            if (distinct + 1 > capacity / 4)
+                capacity *= 2;
+            keys = new Object[capacity];
+            counts = new int[capacity];
+            used = 0;
+            int mask = capacity - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldCounts[j] > 0) {
+                    int i = hash(oldKeys[j]) & mask;
+                    while (keys[i] != null)
+                        i = (i + 1) & mask;
+                    keys[i] = oldKeys[j];
+                    counts[i] = oldCounts[j];
+                    used++;
+                }
+            }
+        }
+
+        private static Object mask(Object o) {
+            return (o == null) ? NULL : o;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <E> E unmask(Object k) {
+            return (k == NULL) ? null : (E) k;
+        }
+
+        private static int hash(Object k) {
+            int h = k.hashCode() * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+
+    Some points to note about this implementation:
+
+        The iterator returns each element as many times as it occurs, as the Collection interface requires; a bag containing three a's and a b has size four and iterates over four elements. To visit each distinct element once, with its count, use cursor, which works exactly like the cursor of WordCounts.
+        When an element's count drops to zero, its key stays in the table with a count of zero, and is only dropped the next time the table is rebuilt. This is what allows the iterator's remove method to work without moving other keys around, which would disturb the iteration. It also means that an element that comes and goes repeatedly doesn't churn the table.
+        The null element is allowed. It is stored as a private placeholder object, because a null key marks an empty slot.
+        Counts are ints, and add throws ArithmeticException rather than let one overflow. The total, which can exceed Integer.MAX_VALUE, is kept in a long; size returns Integer.MAX_VALUE if the total is any larger, as the Collection interface specifies. 
+
+    The bulk operations follow the set-algebraic idioms in The Set Interface section, applied to counts rather than to membership. union makes each count the larger of the two, intersect the smaller, and subtract the difference, stopping at zero. addAll, given another Bag, adds the counts together. None of them iterates over individual occurrences, so an element that occurs a million times costs no more than one that occurs once.
+
+    Here are the bags a = [a, a, a, b, c] and b = [a, b, b, d], and the results of applying each of the bulk operations to a copy of a.
+
+        union: [a, a, a, b, b, c, d]
+        intersect: [a, b]
+        subtract: [a, a, c]
+        addAll: [a, a, a, a, b, b, b, c, d] 
+
+    A Bag can do the work of both the frequency table in the Freq program and the pair of sets in the FindDups2 program in The Set Interface section. Here's Freq.
+
+    import java.util.*;
+
+    public class Freq {
+        public static void main(String[] args) {
+            Bag<String> m = new Bag<String>(Arrays.asList(args));
+
+            System.out.println(m.distinctCount() + " distinct words:");
+            for (IntCursor<String> c = m.cursor(); c.advance(); )
+                System.out.println(c.key() + "=" + c.value());
+        }
+    }
+
+    And here's FindDups2, which no longer needs a destructive set difference. A word is unique if it occurs once, and a duplicate otherwise.
+
+    import java.util.*;
+
+    public class FindDups2 {
+        public static void main(String[] args) {
+            Bag<String> words = new Bag<String>(Arrays.asList(args));
+            Set<String> uniques = new HashSet<String>();
+            Set<String> dups    = new HashSet<String>();
+
+            for (IntCursor<String> c = words.cursor(); c.advance(); )
+                if (c.value() == 1)
+                    uniques.add(c.key());
+                else
+                    dups.add(c.key());
+
+            System.out.println("Unique words:    " + uniques);
+            System.out.println("Duplicate words: " + dups);
+        }
+    }
+
+    Run with the usual arguments, it produces the same output as before.
+
+    % java FindDups2 i came i saw i left
+    Unique words:    [left, saw, came]
+    Duplicate words: [i]
+
+Persistent Collections
+
+    The first reason on the list was persistence: a collection that is still there the next time the program starts. The suggestion there was a veneer over an external database, but for a single program there's a lighter approach. A file can be memory-mapped, so that its contents appear as a ByteBuffer and the operating system reads pages from disk only when they are touched. A collection stored in a mapped file doesn't need to be read in when the program starts; opening it means reading a small header and mapping the file, and the data is paged in as it is used. A ten-gigabyte list opens as quickly as a ten-element one.
+
+    This section builds two such collections, MappedList and MappedMap, on AbstractList and AbstractMap. They share three pieces of design:
+
+        Codecs. The collections store bytes, not objects, so each needs a way to turn its elements into bytes and back. That's the job of a Codec, which you supply when you open the collection.
+        Append-only writes. New data is only ever written past the end of the existing data, and nothing already written is changed. A crash in the middle of a write can damage only data that was never committed.
+        A checksummed header. Nothing written is considered part of the collection until commit is called. Commit forces the data to disk, and only then writes a header that records how much of it there is. There are two header slots, written alternately, each with a sequence number and a CRC32 checksum. A crash in the middle of writing one slot leaves a slot whose checksum fails, and the other slot still describes the previous commit. 
+
+    Here's the Codec interface, with a codec for Strings.
+
+    import java.nio.ByteBuffer;
+    import java.nio.charset.StandardCharsets;
+
+    public interface Codec<T> {
+        byte[] encode(T value);
+
+        // Decodes a value from src, which holds exactly one encoded value.
+        T decode(ByteBuffer src);
+
+        Codec<String> UTF_8 = new Codec<String>() {
+            public byte[] encode(String value) {
+                return value.getBytes(StandardCharsets.UTF_8);
+            }
+
+            public String decode(ByteBuffer src) {
+                return StandardCharsets.UTF_8.decode(src).toString();
+            }
+        };
+    }
+
+    A single MappedByteBuffer can't exceed two gigabytes, so the collections use a small helper that maps a file in regions of one gigabyte, each mapped the first time it is needed. A read that happens to cross a region boundary is copied instead. So is a read from the part of a growing file that lies past the current mapping, until the file has grown enough to be worth mapping again: a new mapping costs a system call and some page-table work, and an old one is released only when it is garbage-collected, so remapping after every append would make reading back what was just written many times slower than reading it through the channel.
+
+    import java.io.IOException;
+    import java.nio.*;
+    import java.nio.channels.FileChannel;
+    import java.util.Arrays;
+
+    // Maps a file lazily, one region of up to a gigabyte at a time. A region
+    // is mapped the first time it is touched. When a file mapped read-only
+    // grows, its region is mapped again only once the file has at least
+    // doubled past the old mapping; until then, reads past the mapping go
+    // through the channel. A file that is appended to and read back in turn
+    // is therefore remapped a few dozen times, not once per append.
+    class MappedRegions {
+        private static final int REGION_BITS = 30;
+        private static final long REGION_SIZE = 1L << REGION_BITS;
+
+        private final FileChannel ch;
+        private final FileChannel.MapMode mode;
+        private MappedByteBuffer[] regions = new MappedByteBuffer[0];
+        private long fileSize;    // as of the last time it was asked for
+
+        MappedRegions(FileChannel ch, FileChannel.MapMode mode) {
+            this.ch = ch;
+            this.mode = mode;
+        }
+
+        // Returns a buffer holding the len bytes at pos. A range that lies in
+        // a single region is a view of the mapping; one that crosses a region
+        // boundary is copied.
+        ByteBuffer slice(long pos, int len) throws IOException {
+            int r = (int) (pos >>> REGION_BITS);
+            int offset = (int) (pos & (REGION_SIZE - 1));
+            if (offset + (long) len <= REGION_SIZE) {
+                MappedByteBuffer m = region(r, offset + len);
+                if (m != null) {
+                    ByteBuffer b = m.duplicate();
+                    b.limit(offset + len);
+                    b.position(offset);
+                    return b.slice();
+                }
+            }
+            ByteBuffer b = ByteBuffer.allocate(len);
+            while (b.hasRemaining())
+                if (ch.read(b, pos + b.position()) < 0)
+                    throw new IOException("unexpected end of file");
+            b.flip();
+            return b;
+        }
+
+        void force() {
+            for (MappedByteBuffer m : regions)
+                if (m != null)
+                    m.force();
+        }
+
+        // Returns region r, mapped to cover at least needed bytes, or null if
+        // those bytes should be read through the channel instead.
+        private MappedByteBuffer region(int r, int needed) throws IOException {
+            if (r >= regions.length)
+                regions = Arrays.copyOf(regions, r + 1);
+            MappedByteBuffer m = regions[r];
+            if (m == null || m.capacity() < needed) {
+                long start = (long) r << REGION_BITS;
+                // A writable mapping must always be a view, or writes to it
+                // would be lost; the files mapped for writing don't grow.
+                boolean copy = m != null && mode == FileChannel.MapMode.READ_ONLY;
+                long size = Math.min(REGION_SIZE, fileSize - start);
+                if (copy && size >= needed && size < 2L * m.capacity() && size < REGION_SIZE)
+                    return null;
+                fileSize = ch.size();
+                size = Math.min(REGION_SIZE, fileSize - start);
+                if (size < needed)
+                    throw new IOException("read past end of file");
+                if (copy && size < 2L * m.capacity() && size < REGION_SIZE)
+                    return null;
+                m = regions[r] = ch.map(mode, start, size);
+            }
+            return m;
+        }
+    }
+
+    MappedList keeps its records in one file and their starting positions, eight bytes per record, in a second file alongside it. Finding element i means reading the ith position from the second file and decoding the record it points to, so get takes constant time no matter how long the list is or how big the records are. The list is append-only: add(E) appends, and set, remove and add(int, E) at any position other than the end throw UnsupportedOperationException, which is what AbstractList does by default for a list that doesn't support them.
+
+    import java.io.*;
+    import java.nio.ByteBuffer;
+    import java.nio.channels.FileChannel;
+    import java.nio.file.*;
+    import java.util.*;
+    import java.util.zip.CRC32;
+    import static java.nio.file.StandardOpenOption.*;
+
+    public class MappedList<E> extends AbstractList<E> implements Closeable {
+        private static final int MAGIC = 0x4D4C5354;     // "MLST"
+        private static final int HEADER_SIZE = 32;
+        private static final int DATA_START = 2 * HEADER_SIZE;
+
+        private final Codec<E> codec;
+        private final FileChannel data;
+        private final FileChannel offsets;
+        private final MappedRegions dataRegions;
+        private final MappedRegions offsetRegions;
+        private long seq;     // sequence number of the newest header
+        private int count;    // number of records, committed or not
+        private long end;     // end of the last record, committed or not
+
+        public MappedList(Path path, Codec<E> codec) throws IOException {
+            this.codec = codec;
+            data = FileChannel.open(path, CREATE, READ, WRITE);
+            offsets = FileChannel.open(
+                path.resolveSibling(path.getFileName() + ".offsets"),
+                CREATE, READ, WRITE);
+            dataRegions = new MappedRegions(data, FileChannel.MapMode.READ_ONLY);
+            offsetRegions = new MappedRegions(offsets, FileChannel.MapMode.READ_ONLY);
+            if (data.size() == 0) {
+                end = DATA_START;
+                commit();
+            } else {
+                readHeader();
+                // Discard anything written after the last commit.
+                data.truncate(end);
+                offsets.truncate(count * 8L);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        public E get(int index) {
+            if (index < 0 || index >= count)
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+            try {
+                long pos = offsetRegions.slice(index * 8L, 8).getLong();
+                int len = dataRegions.slice(pos, 4).getInt();
+                return codec.decode(dataRegions.slice(pos + 4, len));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        public int size() {
+            return count;
+        }
+
+        // Appends e to the file. Like every change, it survives a crash only
+        // once it has been committed.
+        public void add(int index, E e) {
+            if (index != count)
+                throw new UnsupportedOperationException("append only");
+            if (count == Integer.MAX_VALUE)
+                throw new IllegalStateException("list is full");
+            byte[] bytes = codec.encode(e);
+            try {
+                ByteBuffer record = ByteBuffer.allocate(4 + bytes.length);
+                record.putInt(bytes.length).put(bytes).flip();
+                write(data, record, end);
+                ByteBuffer offset = ByteBuffer.allocate(8);
+                offset.putLong(end).flip();
+                write(offsets, offset, count * 8L);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            end += 4 + bytes.length;
+            count++;
+            modCount++;
+        }
+
+        // Makes every record added so far durable. The records and offsets
+        // are forced to disk first, and only then is the header that counts
+        // them written, to whichever of the two header slots is older.
+        public void commit() throws IOException {
+            data.force(false);
+            offsets.force(false);
+            seq++;
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(0).putLong(seq).putLong(count).putLong(end);
+            header.putInt(4, checksum(header));
+            header.flip();
+            write(data, header, (seq % 2) * HEADER_SIZE);
+            data.force(false);
+        }
+
+        public void close() throws IOException {
+            try {
+                commit();
+            } finally {
+                data.close();
+                offsets.close();
+            }
+        }
+
+        // Reads both header slots and believes the newer of the valid ones.
+        // A slot torn by a crash fails its checksum, and the other slot still
+        // describes the previous commit.
+        private void readHeader() throws IOException {
+            boolean found = false;
+            for (int slot = 0; slot < 2; slot++) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                data.read(header, slot * HEADER_SIZE);
+                if (header.getInt(0) != MAGIC || header.getInt(4) != checksum(header))
+                    continue;
+                long s = header.getLong(8);
+                if (!found || s > seq) {
+                    found = true;
+                    seq = s;
+                    count = (int) header.getLong(16);
+                    end = header.getLong(24);
+                }
+            }
+            if (!found)
+                throw new IOException("no valid header");
+        }
+
+        private static int checksum(ByteBuffer header) {
+            CRC32 crc = new CRC32();
+            ByteBuffer b = header.duplicate();
+            b.limit(HEADER_SIZE);
+            b.position(8);
+            crc.update(b);
+            return (int) crc.getValue();
+        }
+
+        private static void write(FileChannel ch, ByteBuffer b, long pos)
+                throws IOException {
+            while (b.hasRemaining())
+                pos += ch.write(b, pos);
+        }
+    }
+
+    On opening, the list truncates both files to the lengths recorded in the newest valid header, discarding anything written after the last commit. That's how a crash is recovered from, and it takes no more time than a normal open. It also means that everything mapped afterward lies within the committed part of the files, which never changes.
+
+    MappedMap is built on a MappedList of entries, which serves as a log: every put appends an entry, and every remove appends an entry with no value to mark the removal. To find the latest entry for a key without reading the whole log, the map keeps a hash index in a third file: an open-addressing table of slots, each holding a hash of the key's encoded bytes and the number of its latest log entry. The hash comes from the bytes rather than from hashCode because it is stored: many classes, enums among them, return a different hashCode each time the program runs, and a stored hashCode of such a key would never match again. Like everything else, the index is mapped, so opening the map doesn't read it.
+
+    import java.io.*;
+    import java.nio.ByteBuffer;
+    import java.nio.channels.FileChannel;
+    import java.nio.file.*;
+    import java.util.*;
+    import static java.nio.file.StandardOpenOption.*;
+
+    public class MappedMap<K, V> extends AbstractMap<K, V> implements Closeable {
+        private static final int MAGIC = 0x4D4D4150;     // "MMAP"
+        private static final int HEADER_SIZE = 64;
+        private static final int SLOT_SIZE = 16;         // hash, record + 1
+        private static final long MIN_CAPACITY = 1024;
+
+        private final MappedList<Entry<K, V>> log;
+        private final Codec<K> keyCodec;
+        private final Path indexPath;
+        private FileChannel index;
+        private MappedRegions slots;
+        private long capacity;   // a power of two
+        private long used;       // slots in use, including removed keys
+        private int size;        // keys whose latest record is not a removal
+        private boolean clean;
+
+        public MappedMap(Path path, Codec<K> keyCodec, Codec<V> valueCodec)
+                throws IOException {
+            log = new MappedList<Entry<K, V>>(path, new EntryCodec<K, V>(keyCodec, valueCodec));
+            this.keyCodec = keyCodec;
+            indexPath = path.resolveSibling(path.getFileName() + ".index");
+            try {
+                if (!openIndex())
+                    rebuildIndex();
+            } catch (IOException | RuntimeException e) {
+                try {
+                    if (index != null)
+                        index.close();
+                    log.close();
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+                throw e;
+            }
+        }
+
+        public V get(Object key) {
+            long i = find(key);
+            return (i < 0) ? null : record(i).getValue();
+        }
+
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        public V put(K key, V value) {
+            if (key == null || value == null)
+                throw new NullPointerException();
+            return update(key, value);
+        }
+
+        public V remove(Object key) {
+            long i = find(key);
+            if (i < 0 || record(i).getValue() == null)
+                return null;
+            @SuppressWarnings("unchecked")
+            K k = (K) key;
+            return update(k, null);
+        }
+
+        public int size() {
+            return size;
+        }
+
+        // Makes every change so far durable: first the log, then the index.
+        public void commit() throws IOException {
+            log.commit();
+            slots.force();
+            clean = true;
+            writeHeader();
+        }
+
+        public void close() throws IOException {
+            try {
+                commit();
+                log.close();
+            } finally {
+                index.close();
+            }
+        }
+
+        public Set<Entry<K, V>> entrySet() {
+            return new AbstractSet<Entry<K, V>>() {
+                public int size() {
+                    return size;
+                }
+
+                public Iterator<Entry<K, V>> iterator() {
+                    return new EntryIterator();
+                }
+            };
+        }
+
+        private class EntryIterator implements Iterator<Entry<K, V>> {
+            private long next = -1;
+            private Entry<K, V> nextEntry;
+            private K lastKey;
+
+            EntryIterator() {
+                advance();
+            }
+
+            private void advance() {
+                nextEntry = null;
+                while (nextEntry == null && ++next < capacity) {
+                    if (recordNumber(next) != 0) {
+                        Entry<K, V> e = record(next);
+                        if (e.getValue() != null)
+                            nextEntry = e;
+                    }
+                }
+            }
+
+            public boolean hasNext() {
+                return nextEntry != null;
+            }
+
+            public Entry<K, V> next() {
+                if (nextEntry == null)
+                    throw new NoSuchElementException();
+                final Entry<K, V> e = nextEntry;
+                lastKey = e.getKey();
+                advance();
+                return new SimpleEntry<K, V>(e) {
+                    public V setValue(V value) {
+                        super.setValue(value);
+                        return put(getKey(), value);
+                    }
+                };
+            }
+
+            // A removal only changes the slot's record number, so the slots
+            // don't move and the iteration is undisturbed.
+            public void remove() {
+                if (lastKey == null)
+                    throw new IllegalStateException();
+                MappedMap.this.remove(lastKey);
+                lastKey = null;
+            }
+        }
+
+        // Appends a record for key to the log and points key's slot at it.
+        // A null value records a removal.
+        private V update(K key, V value) {
+            long h = hash(key);
+            long i = find(key);
+            V oldValue = (i < 0) ? null : record(i).getValue();
+            markDirty();
+            log.add(new SimpleImmutableEntry<K, V>(key, value));
+            if (i < 0) {
+                i = emptySlot(h);
+                used++;
+            }
+            setSlot(i, h, log.size());
+            if (oldValue == null && value != null)
+                size++;
+            else if (oldValue != null && value == null)
+                size--;
+            if (used > capacity / 2)
+                resize();
+            return oldValue;
+        }
+
+        // Returns the slot holding key, or -1 if key has never been stored.
+        private long find(Object key) {
+            if (key == null)
+                return -1;
+            long h;
+            try {
+                @SuppressWarnings("unchecked")
+                K k = (K) key;
+                h = hash(k);
+            } catch (ClassCastException e) {
+                return -1;    // not a K, so it can't be in the map
+            }
+            long mask = capacity - 1;
+            for (long i = spread(h) & mask; recordNumber(i) != 0; i = (i + 1) & mask)
+                if (hash(i) == h && key.equals(record(i).getKey()))
+                    return i;
+            return -1;
+        }
+
+        private long emptySlot(long h) {
+            long mask = capacity - 1;
+            long i = spread(h) & mask;
+            while (recordNumber(i) != 0)
+                i = (i + 1) & mask;
+            return i;
+        }
+
+        private Entry<K, V> record(long slot) {
+            return log.get((int) (recordNumber(slot) - 1));
+        }
+
+        private long hash(long slot) {
+            return slot(slot).getLong(0);
+        }
+
+        // 64-bit FNV-1a over the key's encoded bytes, which depend only on
+        // what is stored, never on the run that stored it.
+        private long hash(K key) {
+            long h = 0xcbf29ce484222325L;
+            for (byte b : keyCodec.encode(key))
+                h = (h ^ (b & 0xff)) * 0x100000001b3L;
+            return h;
+        }
+
+        private long recordNumber(long slot) {
+            return slot(slot).getLong(8);
+        }
+
+        private void setSlot(long slot, long hash, long recordNumber) {
+            slot(slot).putLong(0, hash).putLong(8, recordNumber);
+        }
+
+        private ByteBuffer slot(long i) {
+            try {
+                return slots.slice(HEADER_SIZE + i * SLOT_SIZE, SLOT_SIZE);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private static long spread(long h) {
+            h *= 0x9E3779B97F4A7C15L;
+            return h ^ (h >>> 32);
+        }
+
+        // The index is marked dirty, on disk, before its first change after a
+        // commit. An index found dirty on open may not match the log.
+        private void markDirty() {
+            if (clean) {
+                clean = false;
+                try {
+                    writeHeader();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+
+        private void writeHeader() throws IOException {
+            ByteBuffer header = slots.slice(0, HEADER_SIZE);
+            header.putInt(0, MAGIC).putInt(4, clean ? 1 : 0)
+                  .putLong(8, log.size()).putLong(16, capacity)
+                  .putLong(24, used).putLong(32, size);
+            slots.force();
+        }
+
+        // Opens the existing index, and returns false if there isn't one that
+        // was cleanly committed along with the log.
+        private boolean openIndex() throws IOException {
+            if (!Files.exists(indexPath))
+                return false;
+            index = FileChannel.open(indexPath, READ, WRITE);
+            if (index.size() < HEADER_SIZE) {
+                index.close();
+                return false;
+            }
+            slots = new MappedRegions(index, FileChannel.MapMode.READ_WRITE);
+            ByteBuffer header = slots.slice(0, HEADER_SIZE);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != 1
+                    || header.getLong(8) != log.size()) {
+                index.close();
+                return false;
+            }
+            capacity = header.getLong(16);
+            used = header.getLong(24);
+            size = (int) header.getLong(32);
+            clean = true;
+            return true;
+        }
+
+        // Replays the whole log into a new index. This only happens for a new
+        // map, or after a crash left the index out of step with the log.
+        private void rebuildIndex() throws IOException {
+            long n = Math.max(MIN_CAPACITY, Long.highestOneBit(Math.max(1, log.size()) * 4L));
+            createIndex(indexPath, n);
+            for (int r = 0; r < log.size(); r++) {
+                Entry<K, V> e = log.get(r);
+                long h = hash(e.getKey());
+                long i = find(e.getKey());
+                if (i < 0) {
+                    i = emptySlot(h);
+                    used++;
+                } else if (record(i).getValue() != null) {
+                    size--;
+                }
+                setSlot(i, h, r + 1);
+                if (e.getValue() != null)
+                    size++;
+            }
+            commit();
+        }
+
+        // Copies the slots into an index twice the size, and swaps it in.
+        private void resize() {
+            try {
+                MappedRegions oldSlots = slots;
+                FileChannel oldIndex = index;
+                long oldCapacity = capacity;
+                Path tmp = indexPath.resolveSibling(indexPath.getFileName() + ".tmp");
+                createIndex(tmp, oldCapacity * 2);
+                for (long j = 0; j < oldCapacity; j++) {
+                    ByteBuffer s = oldSlots.slice(HEADER_SIZE + j * SLOT_SIZE, SLOT_SIZE);
+                    if (s.getLong(8) != 0) {
+                        long i = emptySlot(s.getLong(0));
+                        setSlot(i, s.getLong(0), s.getLong(8));
+                    }
+                }
+                writeHeader();
+                oldIndex.close();
+                Files.move(tmp, indexPath, StandardCopyOption.ATOMIC_MOVE,
+                           StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void createIndex(Path path, long newCapacity) throws IOException {
+            FileChannel ch = FileChannel.open(path, CREATE, TRUNCATE_EXISTING, READ, WRITE);
+            ch.write(ByteBuffer.allocate(1), HEADER_SIZE + newCapacity * SLOT_SIZE - 1);
+            index = ch;
+            slots = new MappedRegions(ch, FileChannel.MapMode.READ_WRITE);
+            capacity = newCapacity;
+            clean = false;
+            if (path.equals(indexPath))
+                used = size = 0;
+            writeHeader();
+        }
+
+        // A record is a flag byte (1 for a removal), the key's length, the key,
+        // and, unless the record is a removal, the value.
+        private static class EntryCodec<K, V> implements Codec<Entry<K, V>> {
+            private final Codec<K> keyCodec;
+            private final Codec<V> valueCodec;
+
+            EntryCodec(Codec<K> keyCodec, Codec<V> valueCodec) {
+                this.keyCodec = keyCodec;
+                this.valueCodec = valueCodec;
+            }
+
+            public byte[] encode(Entry<K, V> e) {
+                byte[] key = keyCodec.encode(e.getKey());
+                byte[] value = (e.getValue() == null) ? new byte[0]
+                                                      : valueCodec.encode(e.getValue());
+                ByteBuffer b = ByteBuffer.allocate(5 + key.length + value.length);
+                b.put((byte) (e.getValue() == null ? 1 : 0)).putInt(key.length)
+                 .put(key).put(value);
+                return b.array();
+            }
+
+            public Entry<K, V> decode(ByteBuffer src) {
+                boolean removal = src.get() == 1;
+                int keyLength = src.getInt();
+                ByteBuffer key = src.slice();
+                key.limit(keyLength);
+                src.position(src.position() + keyLength);
+                V value = removal ? null : valueCodec.decode(src.slice());
+                return new SimpleImmutableEntry<K, V>(keyCodec.decode(key), value);
+            }
+        }
+    }
+
+    The index, unlike the log, is changed in place, so it needs protecting in a different way. Before the first change after a commit, the map marks the index dirty on disk, and commit marks it clean again once the log has been committed. When the map is opened, an index that is clean and covers exactly the entries in the log is used as it is. Anything else means that the program crashed after changing the index, and the index is rebuilt from the log. That's the one time opening a map takes time proportional to its size. When the index becomes half full, it is copied to a new file of twice the size, and the new file replaces the old one with an atomic rename.
+
+    Some caveats apply to both collections:
+
+        They are not thread-safe, and only one program should have a given file open at a time.
+        Changes are visible to the program that makes them immediately, but they survive a crash only once committed. close commits.
+        Removing keys from a MappedMap doesn't make the log shorter; the removal is appended. A map that changes a lot needs occasional compaction: copying its live entries into a new map and replacing the old files.
+        A MappedByteBuffer stays mapped until it is garbage-collected. On Windows, a file can't be renamed over while it is mapped, so the index resize as written works only on platforms that allow this, such as Linux and macOS.
+        The null key and null values aren't allowed in a MappedMap, because a null value marks a removal. 
+
+    Here's a program that counts the words on its command line, as Freq does, but keeps its table in a file, so that each run adds to the counts of the runs before it.
+
+    import java.nio.ByteBuffer;
+    import java.nio.file.*;
+
+    public class PersistentFreq {
+        static final Codec<Integer> INT = new Codec<Integer>() {
+            public byte[] encode(Integer value) {
+                return ByteBuffer.allocate(4).putInt(value).array();
+            }
+
+            public Integer decode(ByteBuffer src) {
+                return src.getInt();
+            }
+        };
+
+        public static void main(String[] args) throws Exception {
+            try (MappedMap<String, Integer> m = new MappedMap<String, Integer>(
+                    Paths.get("freq.map"), Codec.UTF_8, INT)) {
+                for (String a : args) {
+                    Integer freq = m.get(a);
+                    m.put(a, (freq == null) ? 1 : freq + 1);
+                }
+                System.out.println(m.size() + " distinct words:");
+                System.out.println(m);
+            }
+        }
+    }
+
+A Telemetry Map
+
+    Another example from the list of reasons was an unmodifiable Map of real-time telemetry data, whose keys are locations and whose get operation reads the sensor at a location. Written as described, every call to get waits for a sensor. If reading a sensor takes a millisecond and a dashboard calls get ten thousand times a second, the map spends ten seconds of sensor time every second, and each caller waits the full millisecond even though the reading changes far less often than that.
+
+    The fix is to keep each reading for a while, which makes the map a cache. TelemetryMap, built on AbstractMap, keeps the most recent reading for each location and calls a Loader you supply to read the sensor only when it needs a new one. It adds four things to a plain read-through cache:
+
+        Per-key time-to-live. Each location has its own lifetime for a reading, given by a function of the key, because a thermometer can be read every few minutes while a flow meter might need reading every second. A reading is never returned once its lifetime has passed.
+        Refresh-ahead. Once a reading has passed three quarters of its lifetime, the next get returns it straight away and asks an Executor to read the sensor in the background. A location that is read steadily always has a fresh reading ready, and its callers never wait for the sensor.
+        Request coalescing. When a reading is missing or has expired, the first caller reads the sensor and every other caller asking for the same location in the meantime waits for that read instead of starting its own. A thousand simultaneous requests for a slow sensor cause one read, not a thousand. The same applies to a refresh already running in the background.
+        Sharding. The keys are spread across a number of shards, four for each processor. Each shard's table is replaced rather than changed when a new location turns up, so get never takes a lock, and the cost of adding a location is copying one shard, not the whole table. 
+
+    Here's the code.
+
+    import java.util.*;
+    import java.util.concurrent.*;
+    import java.util.concurrent.atomic.*;
+    import java.util.function.*;
+
+    public class TelemetryMap<K, V> extends AbstractMap<K, V> {
+        public interface Loader<K, V> {
+            V load(K key) throws Exception;
+        }
+
+        private static final class Reading<V> {
+            final V value;
+            final long refreshAt;   // System.nanoTime() after which to refresh in the background
+            final long expiresAt;   // System.nanoTime() after which the value may not be returned
+
+            Reading(V value, long loadedAt, long ttl) {
+                this.value = value;
+                this.refreshAt = loadedAt + ttl - ttl / 4;
+                this.expiresAt = loadedAt + ttl;
+            }
+        }
+
+        private static final class Slot<K, V> {
+            final K key;
+            final long ttl;
+            volatile Reading<V> reading;
+            final AtomicReference<CompletableFuture<V>> pending =
+                new AtomicReference<CompletableFuture<V>>();
+
+            Slot(K key, long ttl) {
+                this.key = key;
+                this.ttl = ttl;
+            }
+        }
+
+        // Copy-on-write: readers never lock; a writer copies one shard only.
+        private static final class Shard<K, V> {
+            volatile Map<K, Slot<K, V>> slots = Collections.emptyMap();
+        }
+
+        private final Loader<? super K, ? extends V> loader;
+        private final ToLongFunction<? super K> timeToLive;
+        private final Executor executor;
+        private final Shard<K, V>[] shards;
+
+        @SuppressWarnings("unchecked")
+        public TelemetryMap(Collection<? extends K> locations,
+                            Loader<? super K, ? extends V> loader,
+                            ToLongFunction<? super K> timeToLive, TimeUnit unit,
+                            Executor executor) {
+            this.loader = Objects.requireNonNull(loader);
+            this.timeToLive = key -> Math.max(1, unit.toNanos(timeToLive.applyAsLong(key)));
+            this.executor = Objects.requireNonNull(executor);
+            int n = Integer.highestOneBit(4 * Runtime.getRuntime().availableProcessors() - 1) << 1;
+            shards = (Shard<K, V>[]) new Shard[n];
+            for (int i = 0; i < n; i++)
+                shards[i] = new Shard<K, V>();
+            for (K key : locations)
+                slot(key);
+        }
+
+        public TelemetryMap(Collection<? extends K> locations,
+                            Loader<? super K, ? extends V> loader,
+                            long timeToLive, TimeUnit unit, Executor executor) {
+            this(locations, loader, key -> timeToLive, unit, executor);
+        }
+
+        private Shard<K, V> shard(Object key) {
+            int h = key.hashCode();
+            h ^= h >>> 16;
+            return shards[h & (shards.length - 1)];
+        }
+
+        private Slot<K, V> slot(K key) {
+            Shard<K, V> shard = shard(key);
+            Slot<K, V> s = shard.slots.get(key);
+            if (s != null)
+                return s;
+            synchronized (shard) {
+                s = shard.slots.get(key);
+                if (s == null) {
+                    s = new Slot<K, V>(key, timeToLive.applyAsLong(key));
+                    Map<K, Slot<K, V>> copy = new HashMap<K, Slot<K, V>>(shard.slots);
+                    copy.put(key, s);
+                    shard.slots = copy;
+                }
+                return s;
+            }
+        }
+
+        private void forget(Slot<K, V> s) {
+            Shard<K, V> shard = shard(s.key);
+            synchronized (shard) {
+                if (shard.slots.get(s.key) == s) {
+                    Map<K, Slot<K, V>> copy = new HashMap<K, Slot<K, V>>(shard.slots);
+                    copy.remove(s.key);
+                    shard.slots = copy;
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        public V get(Object key) {
+            if (key == null)
+                return null;
+            Slot<K, V> s = shard(key).slots.get(key);
+            if (s == null)
+                s = slot((K) key);    // a location not seen before; the loader decides
+            Reading<V> r = s.reading;
+            if (r != null) {
+                long now = System.nanoTime();
+                if (now - r.expiresAt < 0) {
+                    if (now - r.refreshAt >= 0)
+                        refreshAhead(s);
+                    return r.value;
+                }
+            }
+            return load(s);
+        }
+
+        // A key that isn't yet in the map and whose read fails isn't a location.
+        public boolean containsKey(Object key) {
+            boolean known = key != null && shard(key).slots.containsKey(key);
+            try {
+                return get(key) != null;
+            } catch (IllegalStateException e) {
+                if (known)
+                    throw e;
+                return false;
+            }
+        }
+
+        // Blocks until a current reading is available; concurrent callers share one load.
+        private V load(Slot<K, V> s) {
+            CompletableFuture<V> f = new CompletableFuture<V>();
+            CompletableFuture<V> other = s.pending.compareAndExchange(null, f);
+            if (other == null) {
+                Reading<V> r = s.reading;
+                if (r != null && System.nanoTime() - r.expiresAt < 0) {
+                    s.pending.set(null);    // someone else finished a load in the meantime
+                    f.complete(r.value);
+                } else {
+                    run(s, f);
+                }
+            } else {
+                f = other;
+            }
+            try {
+                return f.join();
+            } catch (CompletionException e) {
+                throw new IllegalStateException("Cannot read " + s.key, e.getCause());
+            }
+        }
+
+        // Starts a background load unless one is already running.
+        private void refreshAhead(Slot<K, V> s) {
+            CompletableFuture<V> f = new CompletableFuture<V>();
+            if (!s.pending.compareAndSet(null, f))
+                return;
+            try {
+                executor.execute(() -> run(s, f));
+            } catch (RejectedExecutionException e) {
+                run(s, f);    // loads already waiting on f still need a result
+            }
+        }
+
+        private void run(Slot<K, V> s, CompletableFuture<V> f) {
+            try {
+                long start = System.nanoTime();
+                V value = loader.load(s.key);
+                if (value == null)
+                    forget(s);
+                s.reading = (value == null) ? null : new Reading<V>(value, start, s.ttl);
+                s.pending.set(null);
+                f.complete(value);
+            } catch (Throwable t) {
+                if (s.reading == null)
+                    forget(s);          // never read successfully, so not a location yet
+                s.pending.set(null);    // an unexpired reading stays in use
+                f.completeExceptionally(t);
+            }
+        }
+
+        public int size() {
+            int size = 0;
+            for (Shard<K, V> shard : shards)
+                size += shard.slots.size();
+            return size;
+        }
+
+        public Set<Map.Entry<K, V>> entrySet() {
+            return new AbstractSet<Map.Entry<K, V>>() {
+                public int size() {
+                    return TelemetryMap.this.size();
+                }
+
+                public Iterator<Map.Entry<K, V>> iterator() {
+                    List<Slot<K, V>> all = new ArrayList<Slot<K, V>>();
+                    for (Shard<K, V> shard : shards)
+                        all.addAll(shard.slots.values());
+                    Iterator<Slot<K, V>> slots = all.iterator();
+
+                    return new Iterator<Map.Entry<K, V>>() {
+                        private Map.Entry<K, V> next = advance();
+
+                        private Map.Entry<K, V> advance() {
+                            while (slots.hasNext()) {
+                                Slot<K, V> s = slots.next();
+                                V value = get(s.key);
+                                if (value != null)
+                                    return new SimpleImmutableEntry<K, V>(s.key, value);
+                            }
+                            return null;
+                        }
+
+                        public boolean hasNext() {
+                            return next != null;
+                        }
+
+                        public Map.Entry<K, V> next() {
+                            if (next == null)
+                                throw new NoSuchElementException();
+                            Map.Entry<K, V> e = next;
+                            next = advance();
+                            return e;
+                        }
+                    };
+                }
+            };
+        }
+    }
+
+    The map is unmodifiable in the sense the list of reasons intended: put and remove throw UnsupportedOperationException, as AbstractMap provides them. Its contents are decided by the loader. The constructor takes the locations known in advance, but calling get with any other key asks the loader about it, and the location becomes part of the map if the loader returns a reading. A loader returns null for a key that isn't a location, and a location whose loader later returns null leaves the map. So size counts the locations known at the time, and iterating over the map reads each of them, waiting for any reading that has expired.
+
+    A sensor that fails doesn't interrupt anything while the current reading lasts. A failed background refresh is ignored, and the old reading continues to be returned until it expires. After that, get reads the sensor itself, and if the read fails it throws IllegalStateException, with the loader's exception as its cause, to every caller waiting for that read. A location that has never been read successfully leaves the map when its read fails, just as it does when the loader returns null, so asking for a key that isn't a location, or one of the wrong type, doesn't leave it behind to be counted by size and read again by every iteration. For such a key, containsKey returns false rather than throwing.
+
+    The following program keeps a map of temperatures for the locations named on its command line, with readings good for a second, and prints it every 400 milliseconds. Only the first printing waits for the sensors; after that, the readings are refreshed in the background on two daemon threads.
+
+    import java.util.*;
+    import java.util.concurrent.*;
+
+    public class Telemetry {
+        public static void main(String[] args) throws Exception {
+            ExecutorService refresher = Executors.newFixedThreadPool(2, r -> {
+                Thread t = new Thread(r, "sensor-refresh");
+                t.setDaemon(true);
+                return t;
+            });
+            TelemetryMap<String, Double> temperatures = new TelemetryMap<String, Double>(
+                Arrays.asList(args),
+                location -> readSensor(location),
+                1, TimeUnit.SECONDS, refresher);
+
+            for (int i = 0; i < 5; i++) {
+                System.out.println(temperatures);
+                Thread.sleep(400);
+            }
+        }
+
+        // Stands in for a slow network read of a real sensor.
+        static Double readSensor(String location) throws InterruptedException {
+            Thread.sleep(50);
+            return 15 + Math.floorMod(location.hashCode() + System.nanoTime() / 1000000000, 10) / 2.0;
+        }
+    }
+
+    Try running this program with the command:
+
+    java Telemetry Boston Denver Tucson
+
+    The readings change about once a second, and each printing takes almost no time:
+
+    {Denver=19.5, Tucson=18.5, Boston=18.0}
+    {Denver=19.5, Tucson=18.5, Boston=18.0}
+    {Denver=19.5, Tucson=18.5, Boston=18.0}
+    {Denver=15.0, Tucson=19.0, Boston=18.5}
+    {Denver=15.0, Tucson=19.0, Boston=18.5}